@@ -19,8 +19,10 @@ package es.babel.cdm.sample;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.util.Log;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
-import es.babel.cdm.navigation.FragmentAnimation;
+import es.babel.cdm.navigation.AnimationPresets;
 import es.babel.cdm.navigation.NavigationActivity;
 import es.babel.cdm.navigation.interfaces.OnActionNavigation;
 
@@ -31,18 +33,50 @@ public class MainActivity extends NavigationActivity implements OnActionNavigati
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long startNanos = System.nanoTime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
         initializeFragmentContainer();
-        goDown(BlankFragment.newInstance(1), true);
+        measureTimeToFirstContent(startNanos);
+        if (savedInstanceState == null) {
+            try {
+                navigateToInitial(BlankFragment.newInstance(1));
+            } catch (Exception e) {
+                Log.e(TAG, "onCreate: ", e);
+            }
+        }
+    }
+
+    /**
+     * Logs the time from onCreate until the first frame showing a Fragment, and the empty frames
+     * drawn before it.
+     */
+    private void measureTimeToFirstContent(final long startNanos) {
+        final ViewGroup container = (ViewGroup) findViewById(R.id.frame_container);
+        container.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            private int emptyFrames = 0;
+
+            @Override
+            public boolean onPreDraw() {
+                if (container.getChildCount() == 0) {
+                    emptyFrames++;
+                    return true;
+                }
+                container.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(TAG, "Time to first content: " + (System.nanoTime() - startNanos) / 1000000
+                        + " ms, " + emptyFrames + " empty frames before it");
+                return true;
+            }
+        });
     }
 
     private void initializeFragmentContainer() {
         this.config().setContainer(R.id.frame_container).setOnActionNavigation(this);
         this.config().setContainer(R.id.frame_container)
                 .setOnActionNavigation(this)
-                .setAnimation(new FragmentAnimation(R.anim.fade_in, R.anim.fade_out, R.anim.fade_in, R.anim.fade_out));
+                .setAnimation(AnimationPresets.FADE)
+                .setLeakDetectionEnabled(BuildConfig.DEBUG);
     }
 
     @Override
@@ -52,6 +86,10 @@ public class MainActivity extends NavigationActivity implements OnActionNavigati
 
     @Override
     public void onBackPressedNavigation() {
+        if (canActivityFinish()) {
+            finish();
+            return;
+        }
         try {
             navigateUp();
         } catch (Exception e) {
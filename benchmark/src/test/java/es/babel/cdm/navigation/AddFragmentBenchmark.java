@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link NavigationManager#addFragment(android.support.v4.app.Fragment, String,
+ * FragmentAnimation, int, int) addFragment} for every combination of navigation flags.
+ * <p/>
+ * A small set of Fragments is added in turn over a backstack that is emptied every
+ * {@link #MAX_DEPTH} entries, so the stack depth stays bounded during the iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddFragmentBenchmark {
+
+    private static final int CONTAINER = 1;
+    private static final int FRAGMENTS = 16;
+    private static final int MAX_DEPTH = 64;
+
+    @Param({
+            "ADD_TO_BACKSTACK",
+            "DO_NOT_ADD_TO_BACKSTACK",
+            "ADD_TO_BACKSTACK|CLEAR_BACKSTACK",
+            "DO_NOT_ADD_TO_BACKSTACK|CLEAR_BACKSTACK",
+            "ADD_TO_BACKSTACK|DO_NOT_REPLACE_FRAGMENT",
+            "DO_NOT_ADD_TO_BACKSTACK|DO_NOT_REPLACE_FRAGMENT",
+            "ADD_TO_BACKSTACK|CLEAR_BACKSTACK|DO_NOT_REPLACE_FRAGMENT",
+            "DO_NOT_ADD_TO_BACKSTACK|CLEAR_BACKSTACK|DO_NOT_REPLACE_FRAGMENT"
+    })
+    public String flags;
+
+    private int flagValue;
+    private BenchmarkFragmentManager fm;
+    private NavigationManager navigationManager;
+    private FragmentAnimation animation;
+    private BenchmarkFragment[] fragments;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        flagValue = parseFlags(flags);
+        fm = new BenchmarkFragmentManager(CONTAINER);
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(fm);
+        animation = new FragmentAnimation(1, 2, 3, 4);
+
+        fragments = new BenchmarkFragment[FRAGMENTS];
+        for (int i = 0; i < FRAGMENTS; i++) {
+            fragments[i] = new BenchmarkFragment("fragment_" + i);
+        }
+    }
+
+    @Benchmark
+    public void addFragment() {
+        if (fm.getBackStackEntryCount() >= MAX_DEPTH) {
+            fm.reset();
+        }
+        BenchmarkFragment fragment = fragments[next];
+        next = (next + 1) % FRAGMENTS;
+        navigationManager.addFragment(fragment, fragment.getFragmentTag(), animation, flagValue,
+                CONTAINER);
+    }
+
+    private static int parseFlags(String flags) {
+        int value = 0;
+        for (String flag : flags.split("\\|")) {
+            if ("DO_NOT_ADD_TO_BACKSTACK".equals(flag)) {
+                value |= NavigationManager.DO_NOT_ADD_TO_BACKSTACK;
+            } else if ("CLEAR_BACKSTACK".equals(flag)) {
+                value |= NavigationManager.CLEAR_BACKSTACK;
+            } else if ("DO_NOT_REPLACE_FRAGMENT".equals(flag)) {
+                value |= NavigationManager.DO_NOT_REPLACE_FRAGMENT;
+            } else if (!"ADD_TO_BACKSTACK".equals(flag)) {
+                throw new IllegalArgumentException("Unknown flag " + flag);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+
+/**
+ * Throughput of the backstack queries the Activity issues on every back press.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackStackQueryBenchmark {
+
+    private static final int CONTAINER = 1;
+
+    @Param({"1", "10", "100", "1000"})
+    public int depth;
+
+    private NavigationManager navigationManager;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFragmentManager fm = new BenchmarkFragmentManager(CONTAINER);
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(fm);
+        BenchmarkFragment.fill(fm, depth);
+    }
+
+    @Benchmark
+    public NavigationFragment getLastFragmentOfStack() {
+        return navigationManager.getLastFragmentOfStack();
+    }
+
+    @Benchmark
+    public boolean canActivityFinish() {
+        return navigationManager.canActivityFinish();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+
+/**
+ * NavigationFragment without any behavior, used to fill the benchmark backstacks.
+ */
+public class BenchmarkFragment extends Fragment implements NavigationFragment {
+
+    private final String tag;
+
+    public BenchmarkFragment(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Fills a FragmentManager backstack with new Fragments.
+     *
+     * @param fm    FragmentManager to fill
+     * @param depth Number of backstack entries to push
+     * @return Pushed Fragments, from the bottom to the top of the backstack
+     */
+    public static BenchmarkFragment[] fill(BenchmarkFragmentManager fm, int depth) {
+        BenchmarkFragment[] fragments = new BenchmarkFragment[depth];
+        for (int i = 0; i < depth; i++) {
+            fragments[i] = new BenchmarkFragment("fragment_" + i);
+            fm.push(fragments[i], fragments[i].getFragmentTag());
+        }
+        return fragments;
+    }
+
+    @Override
+    public boolean customizedOnBackPressed() {
+        return false;
+    }
+
+    @Override
+    public String getFragmentTag() {
+        return tag;
+    }
+
+    @Override
+    public boolean isEntryFragment() {
+        return false;
+    }
+
+    @Override
+    public boolean isSingleInstance() {
+        return false;
+    }
+
+    @Override
+    public void onFragmentVisible() {
+    }
+
+    @Override
+    public void onFragmentNotVisible() {
+    }
+
+    @Override
+    public void onBackPressed() {
+    }
+
+    @Override
+    public String onBackPressedTarget() {
+        return null;
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.view.View;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hand written FragmentManager with a single container and a list based backstack.
+ * <p/>
+ * Transactions are applied as soon as they are committed and pops are always immediate. The
+ * transaction and the backstack entries are recycled, so the fake itself does not allocate in
+ * steady state and the allocations measured belong to the NavigationManager. Only the resumed
+ * and view destroyed lifecycle callbacks are dispatched.
+ */
+public class BenchmarkFragmentManager extends FragmentManager {
+
+    private final int containerId;
+
+    private final ArrayList<Entry> entries = new ArrayList<Entry>();
+    private final ArrayList<Entry> recycledEntries = new ArrayList<Entry>();
+    private final HashMap<String, Fragment> fragmentsByTag = new HashMap<String, Fragment>();
+    private final ArrayList<OnBackStackChangedListener> listeners =
+            new ArrayList<OnBackStackChangedListener>();
+    private final ArrayList<FragmentLifecycleCallbacks> callbacks =
+            new ArrayList<FragmentLifecycleCallbacks>();
+    private final Transaction transaction = new Transaction();
+
+    private Fragment container;
+    private int nextId = 0;
+
+    public BenchmarkFragmentManager(int containerId) {
+        this.containerId = containerId;
+    }
+
+    /**
+     * Pushes a Fragment as if a transaction replacing the container and adding it to the
+     * backstack had been committed.
+     *
+     * @param fragment Fragment to push
+     * @param tag      Tag of the Fragment and name of the backstack entry
+     */
+    public void push(Fragment fragment, String tag) {
+        Fragment previous = container;
+        putInContainer(fragment, tag, true);
+        pushEntry(tag, fragment, previous);
+        notifyBackStackChanged();
+    }
+
+    /**
+     * Fragment on top of the container.
+     *
+     * @return Top Fragment or null if the container is empty
+     */
+    public Fragment top() {
+        return container;
+    }
+
+    /**
+     * Empties the backstack and the container.
+     */
+    public void reset() {
+        while (!entries.isEmpty()) {
+            recycledEntries.add(entries.remove(entries.size() - 1));
+        }
+        fragmentsByTag.clear();
+        container = null;
+        notifyBackStackChanged();
+    }
+
+    @Override
+    public FragmentTransaction beginTransaction() {
+        transaction.clear();
+        return transaction;
+    }
+
+    @Override
+    public boolean executePendingTransactions() {
+        return false;
+    }
+
+    @Override
+    public Fragment findFragmentById(int id) {
+        return id == containerId ? container : null;
+    }
+
+    @Override
+    public Fragment findFragmentByTag(String tag) {
+        return fragmentsByTag.get(tag);
+    }
+
+    @Override
+    public void popBackStack() {
+        popBackStackImmediate();
+    }
+
+    @Override
+    public boolean popBackStackImmediate() {
+        if (entries.isEmpty()) {
+            return false;
+        }
+        popTo(entries.size() - 1);
+        return true;
+    }
+
+    @Override
+    public void popBackStack(String name, int flags) {
+        popBackStackImmediate(name, flags);
+    }
+
+    @Override
+    public boolean popBackStackImmediate(String name, int flags) {
+        if (name == null) {
+            if ((flags & POP_BACK_STACK_INCLUSIVE) == 0) {
+                return popBackStackImmediate();
+            }
+            if (entries.isEmpty()) {
+                return false;
+            }
+            popTo(0);
+            return true;
+        }
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (name.equals(entries.get(i).name)) {
+                return popTo((flags & POP_BACK_STACK_INCLUSIVE) != 0 ? i : i + 1);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void popBackStack(int id, int flags) {
+        popBackStackImmediate(id, flags);
+    }
+
+    @Override
+    public boolean popBackStackImmediate(int id, int flags) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).id == id) {
+                return popTo((flags & POP_BACK_STACK_INCLUSIVE) != 0 ? i : i + 1);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getBackStackEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public BackStackEntry getBackStackEntryAt(int index) {
+        return entries.get(index);
+    }
+
+    @Override
+    public void addOnBackStackChangedListener(OnBackStackChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeOnBackStackChangedListener(OnBackStackChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void putFragment(Bundle bundle, String key, Fragment fragment) {
+    }
+
+    @Override
+    public Fragment getFragment(Bundle bundle, String key) {
+        return null;
+    }
+
+    @Override
+    public List<Fragment> getFragments() {
+        return new ArrayList<Fragment>(fragmentsByTag.values());
+    }
+
+    @Override
+    public Fragment.SavedState saveFragmentInstanceState(Fragment f) {
+        return null;
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return false;
+    }
+
+    @Override
+    public void registerFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb,
+                                                   boolean recursive) {
+        callbacks.add(cb);
+    }
+
+    @Override
+    public void unregisterFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb) {
+        callbacks.remove(cb);
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+    }
+
+    private void putInContainer(Fragment fragment, String tag, boolean replace) {
+        Fragment previous = container;
+        if (tag != null) {
+            fragmentsByTag.put(tag, fragment);
+        }
+        container = fragment;
+        if (replace && previous != null) {
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).onFragmentViewDestroyed(this, previous);
+            }
+        }
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onFragmentResumed(this, fragment);
+        }
+    }
+
+    private void pushEntry(String name, Fragment fragment, Fragment previous) {
+        Entry entry = recycledEntries.isEmpty()
+                ? new Entry() : recycledEntries.remove(recycledEntries.size() - 1);
+        entry.id = nextId++;
+        entry.name = name;
+        entry.fragment = fragment;
+        entry.previous = previous;
+        entries.add(entry);
+    }
+
+    private boolean popTo(int lowest) {
+        if (lowest >= entries.size()) {
+            return false;
+        }
+        while (entries.size() > lowest) {
+            Entry entry = entries.remove(entries.size() - 1);
+            if (entry.name != null && fragmentsByTag.get(entry.name) == entry.fragment) {
+                fragmentsByTag.remove(entry.name);
+            }
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).onFragmentViewDestroyed(this, entry.fragment);
+            }
+            container = entry.previous;
+            entry.fragment = null;
+            entry.previous = null;
+            recycledEntries.add(entry);
+        }
+        if (container != null) {
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).onFragmentResumed(this, container);
+            }
+        }
+        notifyBackStackChanged();
+        return true;
+    }
+
+    private void notifyBackStackChanged() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onBackStackChanged();
+        }
+    }
+
+    private static class Entry implements BackStackEntry {
+
+        int id;
+        String name;
+        Fragment fragment;
+        Fragment previous;
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getBreadCrumbTitleRes() {
+            return 0;
+        }
+
+        @Override
+        public int getBreadCrumbShortTitleRes() {
+            return 0;
+        }
+
+        @Override
+        public CharSequence getBreadCrumbTitle() {
+            return null;
+        }
+
+        @Override
+        public CharSequence getBreadCrumbShortTitle() {
+            return null;
+        }
+    }
+
+    /**
+     * Single reusable transaction. Only the last added Fragment is taken into account.
+     */
+    private class Transaction extends FragmentTransaction {
+
+        private Fragment fragment;
+        private String tag;
+        private boolean replace;
+        private boolean addToBackStack;
+        private String name;
+
+        void clear() {
+            fragment = null;
+            tag = null;
+            replace = false;
+            addToBackStack = false;
+            name = null;
+        }
+
+        @Override
+        public FragmentTransaction add(Fragment fragment, String tag) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction add(int containerViewId, Fragment fragment) {
+            return add(containerViewId, fragment, null);
+        }
+
+        @Override
+        public FragmentTransaction add(int containerViewId, Fragment fragment, String tag) {
+            this.fragment = fragment;
+            this.tag = tag;
+            this.replace = false;
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction replace(int containerViewId, Fragment fragment) {
+            return replace(containerViewId, fragment, null);
+        }
+
+        @Override
+        public FragmentTransaction replace(int containerViewId, Fragment fragment, String tag) {
+            this.fragment = fragment;
+            this.tag = tag;
+            this.replace = true;
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction remove(Fragment fragment) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction hide(Fragment fragment) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction show(Fragment fragment) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction detach(Fragment fragment) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction attach(Fragment fragment) {
+            return this;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return fragment == null;
+        }
+
+        @Override
+        public FragmentTransaction setCustomAnimations(int enter, int exit) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setCustomAnimations(int enter, int exit, int popEnter,
+                                                       int popExit) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction addSharedElement(View sharedElement, String name) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setTransition(int transit) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setTransitionStyle(int styleRes) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction addToBackStack(String name) {
+            this.addToBackStack = true;
+            this.name = name;
+            return this;
+        }
+
+        @Override
+        public boolean isAddToBackStackAllowed() {
+            return true;
+        }
+
+        @Override
+        public FragmentTransaction disallowAddToBackStack() {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setBreadCrumbTitle(int res) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setBreadCrumbTitle(CharSequence text) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setBreadCrumbShortTitle(int res) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setBreadCrumbShortTitle(CharSequence text) {
+            return this;
+        }
+
+        @Override
+        public FragmentTransaction setAllowOptimization(boolean allowOptimization) {
+            return this;
+        }
+
+        @Override
+        public int commit() {
+            return commitAllowingStateLoss();
+        }
+
+        @Override
+        public int commitAllowingStateLoss() {
+            commitNowAllowingStateLoss();
+            return addToBackStack ? nextId - 1 : -1;
+        }
+
+        @Override
+        public void commitNow() {
+            commitNowAllowingStateLoss();
+        }
+
+        @Override
+        public void commitNowAllowingStateLoss() {
+            Fragment previous = container;
+            if (fragment != null) {
+                putInContainer(fragment, tag, replace);
+            }
+            if (addToBackStack) {
+                pushEntry(name, fragment, previous);
+                notifyBackStackChanged();
+            }
+            clear();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of whole navigation sessions run on an {@link InMemoryNavigationStack}: going down
+ * a number of levels and back to the first Fragment, one level at a time. The in-memory stack
+ * applies the same backstack rules as the FragmentManager, so this measures the navigation
+ * rules end to end rather than single calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationSessionBenchmark {
+
+    private static final int CONTAINER = 1;
+
+    @Param({"10", "100"})
+    public int levels;
+
+    private NavigationManager navigationManager;
+    private BenchmarkFragment[] fragments;
+
+    @Setup
+    public void setUp() {
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(new InMemoryNavigationStack());
+
+        fragments = new BenchmarkFragment[levels + 1];
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = new BenchmarkFragment("fragment_" + i);
+        }
+        navigationManager.addFragment(fragments[0], fragments[0].getFragmentTag(), null,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+    }
+
+    @Benchmark
+    public int downAndBack() {
+        for (int i = 1; i < fragments.length; i++) {
+            navigationManager.addFragment(fragments[i], fragments[i].getFragmentTag(), null,
+                    NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+        }
+        for (int i = 1; i < fragments.length; i++) {
+            navigationManager.popBackStack(CONTAINER);
+        }
+        return navigationManager.getBackStackEntryCount();
+    }
+}
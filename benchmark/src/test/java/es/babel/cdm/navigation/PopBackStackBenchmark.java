@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link NavigationManager#popBackStack(int) popBackStack(int)} at several backstack
+ * depths.
+ * <p/>
+ * Every operation pops the top Fragment and pushes it back straight through the fake
+ * FragmentManager, so the depth stays constant. The push goes through the backstack listeners of
+ * the NavigationManager as a real navigation would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopBackStackBenchmark {
+
+    private static final int CONTAINER = 1;
+
+    @Param({"1", "10", "100", "1000"})
+    public int depth;
+
+    private BenchmarkFragmentManager fm;
+    private NavigationManager navigationManager;
+
+    @Setup
+    public void setUp() {
+        fm = new BenchmarkFragmentManager(CONTAINER);
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(fm);
+        BenchmarkFragment.fill(fm, depth);
+    }
+
+    @Benchmark
+    public void popBackStack() {
+        BenchmarkFragment top = (BenchmarkFragment) fm.top();
+        navigationManager.popBackStack(CONTAINER);
+        fm.push(top, top.getFragmentTag());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+/**
+ * Shared and immutable {@link FragmentAnimation FragmentAnimation} presets of the library
+ * animations.
+ * <p/>
+ * Every navigation using a preset reuses the same instance, so no FragmentAnimation is created per
+ * navigation. Animation resources are still parsed by the FragmentManager when the transaction
+ * runs.
+ */
+public final class AnimationPresets {
+
+    /**
+     * Fade in and fade out, also when going back
+     */
+    public static final FragmentAnimation FADE = new FragmentAnimation(
+            R.anim.fade_in, R.anim.fade_out, R.anim.fade_in, R.anim.fade_out);
+
+    /**
+     * New Fragment slides in from the right, previous one slides back in from the left
+     */
+    public static final FragmentAnimation SLIDE = new FragmentAnimation(
+            R.anim.slide_in_right, R.anim.slide_out_left,
+            R.anim.slide_in_left, R.anim.slide_out_right);
+
+    /**
+     * Both Fragments move together, the new one coming from the right
+     */
+    public static final FragmentAnimation CONTINUOUS_SLIDE = new FragmentAnimation(
+            R.anim.continuous_slide_in_left, R.anim.continuous_slide_out_left,
+            R.anim.continuous_slide_in_right, R.anim.continuous_slide_out_right);
+
+    /**
+     * Both Fragments move together, the new one coming from the left. Used by the inverse
+     * navigations.
+     */
+    public static final FragmentAnimation CONTINUOUS_SLIDE_BACK = new FragmentAnimation(
+            R.anim.continuous_slide_in_right, R.anim.continuous_slide_out_right,
+            R.anim.continuous_slide_in_right, R.anim.continuous_slide_out_right);
+
+    /**
+     * New Fragment slides up from the bottom over the previous one and slides down when going back
+     */
+    public static final FragmentAnimation BOTTOM_SHEET = new FragmentAnimation(
+            R.anim.slide_in_bottom, FragmentAnimation.NO_ANIMATION,
+            FragmentAnimation.NO_ANIMATION, R.anim.slide_out_bottom);
+
+    private AnimationPresets() {
+    }
+}
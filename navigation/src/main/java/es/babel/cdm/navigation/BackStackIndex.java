@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import es.babel.cdm.navigation.interfaces.NavigationStack;
+
+/**
+ * In-memory mirror of the FragmentManager backstack used by the
+ * {@link NavigationManager NavigationManager} to answer its queries without going back to the
+ * FragmentManager every time.
+ * <p/>
+ * The mirror is kept in sync through {@link FragmentManager.OnBackStackChangedListener}. As the
+ * FragmentManager only pushes and pops from the top of the stack, every change only visits the
+ * entries that actually changed. The depth, the top entry and the position of a tag are answered
+ * in constant time.
+ */
+public class BackStackIndex implements FragmentManager.OnBackStackChangedListener {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final NavigationStack stack;
+
+    private String[] tags = new String[INITIAL_CAPACITY];
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private Fragment[] fragments = new Fragment[INITIAL_CAPACITY];
+    /**
+     * Entries mirrored. They are compared by identity, as the FragmentManager reuses the ids of
+     * popped entries: clearing the backstack and adding the same tag in one batch gives an entry
+     * with the same id and name but another Fragment.
+     */
+    private FragmentManager.BackStackEntry[] entries =
+            new FragmentManager.BackStackEntry[INITIAL_CAPACITY];
+    /**
+     * Position of the previous entry with the same tag, or -1. Used to restore the
+     * tag to position map when an entry is popped.
+     */
+    private int[] previousSameTag = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final HashMap<String, Integer> lastPositionByTag = new HashMap<String, Integer>();
+
+    /**
+     * Creates a new index over the backstack of the given FragmentManager and fills it with the
+     * current entries.
+     *
+     * @param fm FragmentManager to mirror
+     */
+    public BackStackIndex(FragmentManager fm) {
+        this(new FragmentManagerStack(fm));
+    }
+
+    /**
+     * Creates a new index over the backstack of the given {@link NavigationStack} and fills it
+     * with the current entries.
+     *
+     * @param stack Back stack to mirror
+     */
+    public BackStackIndex(NavigationStack stack) {
+        this.stack = stack;
+        sync();
+    }
+
+    @Override
+    public void onBackStackChanged() {
+        sync();
+    }
+
+    /**
+     * Brings the mirror up to date with the FragmentManager backstack.
+     */
+    public void sync() {
+        int count = stack.getBackStackEntryCount();
+
+        while (size > count) {
+            removeTop();
+        }
+        while (size > 0 && !matches(size - 1, stack.getBackStackEntryAt(size - 1))) {
+            removeTop();
+        }
+        while (size < count) {
+            append(stack.getBackStackEntryAt(size));
+        }
+    }
+
+    /**
+     * Number of entries of the backstack.
+     *
+     * @return Backstack depth
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tag of the entry on top of the backstack.
+     *
+     * @return Tag of the top entry or null if the backstack is empty
+     */
+    public String topTag() {
+        return size > 0 ? tags[size - 1] : null;
+    }
+
+    /**
+     * Fragment added by the entry on top of the backstack.
+     *
+     * @return Top Fragment or null if the backstack is empty
+     */
+    public Fragment top() {
+        return size > 0 ? fragmentAt(size - 1) : null;
+    }
+
+    /**
+     * Tag of the entry at a given position, 0 being the bottom of the backstack.
+     *
+     * @param position Position of the entry
+     * @return Tag of the entry
+     */
+    public String tagAt(int position) {
+        return tags[position];
+    }
+
+    /**
+     * FragmentManager id of the entry at a given position, 0 being the bottom of the backstack.
+     *
+     * @param position Position of the entry
+     * @return Backstack entry id
+     */
+    public int idAt(int position) {
+        return ids[position];
+    }
+
+    /**
+     * Fragment added by the entry at a given position, 0 being the bottom of the backstack.
+     *
+     * @param position Position of the entry
+     * @return Fragment or null if there is no Fragment with the tag of the entry
+     */
+    public Fragment fragmentAt(int position) {
+        Fragment fragment = fragments[position];
+        if (fragment == null && tags[position] != null) {
+            fragment = stack.findFragmentByTag(tags[position]);
+            fragments[position] = fragment;
+        }
+        return fragment;
+    }
+
+    /**
+     * Position of the topmost entry with the given tag.
+     *
+     * @param tag Tag to look for
+     * @return Position of the entry or -1 if the tag is not in the backstack
+     */
+    public int positionOf(String tag) {
+        Integer position = lastPositionByTag.get(tag);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Checks if there is any entry with the given tag in the backstack.
+     *
+     * @param tag Tag to look for
+     * @return TRUE if the tag is in the backstack, FALSE otherwise
+     */
+    public boolean contains(String tag) {
+        return lastPositionByTag.containsKey(tag);
+    }
+
+    private boolean matches(int position, FragmentManager.BackStackEntry entry) {
+        return entries[position] == entry;
+    }
+
+    private void append(FragmentManager.BackStackEntry entry) {
+        ensureCapacity(size + 1);
+
+        String tag = entry.getName();
+        tags[size] = tag;
+        ids[size] = entry.getId();
+        entries[size] = entry;
+        fragments[size] = tag != null ? stack.findFragmentByTag(tag) : null;
+        previousSameTag[size] = positionOf(tag);
+        if (tag != null) {
+            lastPositionByTag.put(tag, size);
+        }
+        size++;
+    }
+
+    private void removeTop() {
+        size--;
+        String tag = tags[size];
+        if (tag != null) {
+            if (previousSameTag[size] >= 0) {
+                lastPositionByTag.put(tag, previousSameTag[size]);
+            } else {
+                lastPositionByTag.remove(tag);
+            }
+        }
+        tags[size] = null;
+        fragments[size] = null;
+        entries[size] = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > tags.length) {
+            int newCapacity = Math.max(capacity, tags.length * 2);
+            tags = Arrays.copyOf(tags, newCapacity);
+            ids = Arrays.copyOf(ids, newCapacity);
+            fragments = Arrays.copyOf(fragments, newCapacity);
+            entries = Arrays.copyOf(entries, newCapacity);
+            previousSameTag = Arrays.copyOf(previousSameTag, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Compact copy of the navigation stack of a container, holding for every entry only what is
+ * needed to create its Fragment again: its tag, its class, its arguments and the instance state
+ * saved by the FragmentManager, views included.
+ * <p/>
+ * The snapshot is written in a small binary format by the {@link BackStackStore BackStackStore}
+ * instead of the saved instance state. The arguments and the instance states are stored as
+ * marshalled Parcels, which are only meant to be read by the same installation of the
+ * application. They are marshalled when the snapshot is taken, so writing it does not touch any
+ * Bundle.
+ */
+public final class BackStackSnapshot {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final int containerId;
+    private final ArrayList<Entry> entries;
+    private final ClassLoader classLoader;
+
+    BackStackSnapshot(int containerId, ArrayList<Entry> entries, ClassLoader classLoader) {
+        this.containerId = containerId;
+        this.entries = entries;
+        this.classLoader = classLoader;
+    }
+
+    public int getContainerId() {
+        return containerId;
+    }
+
+    /**
+     * Number of Fragments in the snapshot, including the one on screen when it is not in the
+     * backstack.
+     *
+     * @return Number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public String getTag(int position) {
+        return entries.get(position).tag;
+    }
+
+    public String getClassName(int position) {
+        return entries.get(position).className;
+    }
+
+    /**
+     * Arguments of the Fragment of an entry, unmarshalled the first time they are requested. Has
+     * to be called from the main thread.
+     *
+     * @param position Position of the entry, 0 being the bottom of the stack
+     * @return Arguments or null if the Fragment had none
+     */
+    public Bundle getArguments(int position) {
+        Entry entry = entries.get(position);
+        if (entry.arguments == null && entry.marshalledArguments.length > 0) {
+            try {
+                entry.arguments = unmarshall(entry.marshalledArguments, classLoader);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+        return entry.arguments;
+    }
+
+    byte[] getMarshalledArguments(int position) {
+        return entries.get(position).marshalledArguments;
+    }
+
+    /**
+     * Instance state of the Fragment of an entry, unmarshalled the first time it is requested. Has
+     * to be called from the main thread.
+     *
+     * @param position Position of the entry, 0 being the bottom of the stack
+     * @return Saved state or null if the Fragment had none
+     */
+    public Fragment.SavedState getSavedState(int position) {
+        Entry entry = entries.get(position);
+        if (entry.savedState == null && entry.marshalledState.length > 0) {
+            try {
+                entry.savedState = unmarshallState(entry.marshalledState, classLoader);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+        return entry.savedState;
+    }
+
+    byte[] getMarshalledState(int position) {
+        return entries.get(position).marshalledState;
+    }
+
+    /**
+     * Creates the Fragment of an entry with its arguments and its saved instance state. Has to be
+     * called from the main thread.
+     *
+     * @param context  Context used to create the Fragment
+     * @param position Position of the entry
+     * @return New Fragment, not added yet
+     * @throws Fragment.InstantiationException If the Fragment cannot be created
+     */
+    Fragment instantiate(Context context, int position) {
+        Fragment fragment = Fragment.instantiate(context, getClassName(position),
+                getArguments(position));
+        Fragment.SavedState state = getSavedState(position);
+        if (state != null) {
+            fragment.setInitialSavedState(state);
+        }
+        return fragment;
+    }
+
+    /**
+     * Checks if an entry was in the backstack or was only on screen, as a Fragment added with
+     * {@link NavigationManager#DO_NOT_ADD_TO_BACKSTACK DO_NOT_ADD_TO_BACKSTACK}.
+     *
+     * @param position Position of the entry
+     * @return TRUE if the entry has to be added to the backstack, FALSE otherwise
+     */
+    public boolean isInBackStack(int position) {
+        return entries.get(position).inBackStack;
+    }
+
+    /**
+     * Writes the snapshot. Can be called from any thread, the arguments were already marshalled
+     * when the snapshot was taken.
+     *
+     * @param out Stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(containerId);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeBoolean(entry.inBackStack);
+            out.writeBoolean(entry.tag != null);
+            if (entry.tag != null) {
+                out.writeUTF(entry.tag);
+            }
+            out.writeUTF(entry.className);
+            out.writeInt(entry.marshalledArguments.length);
+            out.write(entry.marshalledArguments);
+            out.writeInt(entry.marshalledState.length);
+            out.write(entry.marshalledState);
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in          Stream to read from
+     * @param classLoader ClassLoader of the argument values
+     * @return Snapshot read
+     * @throws IOException If the stream cannot be read or was written in another format
+     */
+    public static BackStackSnapshot readFrom(DataInputStream in, ClassLoader classLoader)
+            throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown back stack format");
+        }
+        int containerId = in.readInt();
+        int size = in.readInt();
+        ArrayList<Entry> entries = new ArrayList<Entry>(size);
+        for (int i = 0; i < size; i++) {
+            boolean inBackStack = in.readBoolean();
+            String tag = in.readBoolean() ? in.readUTF() : null;
+            String className = in.readUTF();
+            byte[] arguments = new byte[in.readInt()];
+            in.readFully(arguments);
+            byte[] state = new byte[in.readInt()];
+            in.readFully(state);
+            Entry entry = new Entry(tag, className, arguments, state, inBackStack);
+            // Checked here so a corrupted file is rejected as a whole
+            entry.arguments = unmarshall(arguments, classLoader);
+            entry.savedState = unmarshallState(state, classLoader);
+            entries.add(entry);
+        }
+        return new BackStackSnapshot(containerId, entries, classLoader);
+    }
+
+    /**
+     * Marshalls the arguments of a Fragment for a new entry. Has to be called from the main
+     * thread, as the Bundle may still be modified by the Fragment.
+     *
+     * @param bundle Arguments, may be null
+     * @return Marshalled arguments, empty if there were none
+     */
+    static byte[] marshall(Bundle bundle) {
+        if (bundle == null) {
+            return new byte[0];
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Marshalls the instance state of a Fragment for a new entry. Has to be called from the main
+     * thread, right after the state is saved.
+     *
+     * @param state Saved state, may be null
+     * @return Marshalled state, empty if there was none
+     */
+    static byte[] marshall(Fragment.SavedState state) {
+        if (state == null) {
+            return new byte[0];
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            state.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static Bundle unmarshall(byte[] bytes, ClassLoader classLoader) throws IOException {
+        if (bytes.length == 0) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(classLoader);
+        } catch (RuntimeException e) {
+            throw new IOException("Arguments cannot be read: " + e.getMessage());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static Fragment.SavedState unmarshallState(byte[] bytes, ClassLoader classLoader)
+            throws IOException {
+        if (bytes.length == 0) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return Fragment.SavedState.CREATOR.createFromParcel(parcel, classLoader);
+        } catch (RuntimeException e) {
+            throw new IOException("Saved state cannot be read: " + e.getMessage());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Fragment of the stack
+     */
+    static class Entry {
+        final String tag;
+        final String className;
+        final byte[] marshalledArguments;
+        final byte[] marshalledState;
+        final boolean inBackStack;
+        Bundle arguments;
+        Fragment.SavedState savedState;
+
+        Entry(String tag, String className, byte[] marshalledArguments, byte[] marshalledState,
+              boolean inBackStack) {
+            this.tag = tag;
+            this.className = className;
+            this.marshalledArguments = marshalledArguments;
+            this.marshalledState = marshalledState;
+            this.inBackStack = inBackStack;
+        }
+    }
+}
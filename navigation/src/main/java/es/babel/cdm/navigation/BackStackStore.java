@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import es.babel.cdm.navigation.interfaces.OnBackStackLoadedListener;
+
+/**
+ * Keeps {@link BackStackSnapshot BackStackSnapshots} in the private storage of the application, so
+ * only a small token has to be kept in the saved instance state.
+ * <p/>
+ * Files are written and read on a single background thread, in the order they were requested, so
+ * a snapshot saved by an Activity is always written before it is read again in the same process.
+ * A snapshot is deleted once read, and the ones left behind by tasks that were never restored are
+ * deleted after a week. If the process dies before a snapshot is written, it is reported as not
+ * found.
+ */
+public class BackStackStore {
+
+    private static final String DIRECTORY = "navigation_backstack";
+
+    /**
+     * Snapshots older than this belong to tasks that are not going to be restored anymore
+     */
+    private static final long STALE_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final Executor IO = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "NavigationBackStackIO");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final File directory;
+    private final ClassLoader classLoader;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Creates a new store in the private storage of the application.
+     *
+     * @param context Any context
+     */
+    public BackStackStore(Context context) {
+        this.directory = new File(context.getFilesDir(), DIRECTORY);
+        this.classLoader = context.getClassLoader();
+    }
+
+    /**
+     * Writes a snapshot in the background.
+     *
+     * @param prefix   Prefix of the token, as the Activity class name, to tell apart the snapshots
+     *                 of different Activities
+     * @param snapshot Snapshot to write
+     * @param previous Token of the previous snapshot of the same Activity, deleted once the new one
+     *                 is written, or null
+     * @return Token to read the snapshot again
+     */
+    public String save(String prefix, final BackStackSnapshot snapshot, final String previous) {
+        final String token = prefix + "-" + Long.toHexString(System.nanoTime());
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(token, snapshot);
+                if (previous != null && !previous.equals(token)) {
+                    delete(previous);
+                }
+                deleteStale();
+            }
+        });
+        return token;
+    }
+
+    /**
+     * Reads a snapshot in the background and deletes it.
+     *
+     * @param token    Token returned when it was saved
+     * @param listener Listener receiving the snapshot on the main thread
+     */
+    public void load(final String token, final OnBackStackLoadedListener listener) {
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BackStackSnapshot snapshot = read(token);
+                delete(token);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onBackStackLoaded(snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    private void write(String token, BackStackSnapshot snapshot) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e("NAVIGATION FRAGMENT", "Cannot create " + directory);
+            return;
+        }
+        File file = new File(directory, token);
+        File temporary = new File(directory, token + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            snapshot.writeTo(out);
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Cannot rename " + temporary);
+            }
+        } catch (IOException e) {
+            Log.e("NAVIGATION FRAGMENT", "The back stack could not be saved", e);
+            temporary.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private BackStackSnapshot read(String token) {
+        File file = new File(directory, token);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return BackStackSnapshot.readFrom(in, classLoader);
+        } catch (IOException e) {
+            Log.e("NAVIGATION FRAGMENT", "The back stack could not be restored", e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Deletes the snapshots of tasks that were never restored
+     */
+    private void deleteStale() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - STALE_AGE_MS;
+        for (File file : files) {
+            if (file.lastModified() < limit) {
+                file.delete();
+            }
+        }
+    }
+
+    private void delete(String token) {
+        new File(directory, token).delete();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+        }
+    }
+}
@@ -22,6 +22,9 @@ package es.babel.cdm.navigation;
  * and ultimely Android's FragmentManager to add some eye candy to the transitions.
  * <p/>
  * The FragmentAnimation class accepts only R.animator ids from android.R classes.
+ * <p/>
+ * Animations are immutable, so the same instance can be shared by every navigation. The common
+ * ones are available in {@link AnimationPresets}.
  */
 public class FragmentAnimation {
 
@@ -29,26 +32,30 @@ public class FragmentAnimation {
      * Constant for no animation with short duration
      */
     public static final int NO_ANIMATION = 0;
+    /**
+     * Shared by every animation without Lollipop Animations
+     */
+    private static final LollipopAnim[] NO_SHARED_VIEWS = new LollipopAnim[0];
     /**
      * Animation for when the Fragment is loaded
      */
-    protected int enterAnim = NO_ANIMATION;
+    protected final int enterAnim;
     /**
      * Animation for when the fragment is removed
      */
-    protected int exitAnim = NO_ANIMATION;
+    protected final int exitAnim;
     /**
      * Animation for when the fragment is pushed into the stack
      */
-    protected int pushInAnim = NO_ANIMATION;
+    protected final int pushInAnim;
     /**
      * Animation for when the fragment is popped from the stack
      */
-    protected int popOutAnim = NO_ANIMATION;
+    protected final int popOutAnim;
     /**
      * Disappearing View for Lollipop Animations
      */
-    protected LollipopAnim[] sharedViews;
+    protected final LollipopAnim[] sharedViews;
 
     /**
      * Creates a partially completed fragment animation, only with enter and exit animation
@@ -57,9 +64,7 @@ public class FragmentAnimation {
      * @param exitAnim  Exit animation
      */
     public FragmentAnimation(int enterAnim, int exitAnim) {
-        this.enterAnim = enterAnim;
-        this.exitAnim = exitAnim;
-        this.sharedViews = new LollipopAnim[0];
+        this(enterAnim, exitAnim, NO_ANIMATION, NO_ANIMATION, NO_SHARED_VIEWS);
     }
 
     /**
@@ -71,9 +76,7 @@ public class FragmentAnimation {
      * @param sharedViews Array with necessary elements to build one or several Lollipop animations
      */
     public FragmentAnimation(int enterAnim, int exitAnim, LollipopAnim[] sharedViews) {
-        this.enterAnim = enterAnim;
-        this.exitAnim = exitAnim;
-        this.sharedViews = sharedViews;
+        this(enterAnim, exitAnim, NO_ANIMATION, NO_ANIMATION, sharedViews);
     }
 
     /**
@@ -87,10 +90,7 @@ public class FragmentAnimation {
      * @param popOutAnim Pop out animation
      */
     public FragmentAnimation(int enterAnim, int exitAnim, int pushInAnim, int popOutAnim) {
-        this(enterAnim, exitAnim);
-        this.pushInAnim = pushInAnim;
-        this.popOutAnim = popOutAnim;
-        this.sharedViews = new LollipopAnim[0];
+        this(enterAnim, exitAnim, pushInAnim, popOutAnim, NO_SHARED_VIEWS);
     }
 
     /**
@@ -110,7 +110,8 @@ public class FragmentAnimation {
         this.exitAnim = exitAnim;
         this.pushInAnim = pushInAnim;
         this.popOutAnim = popOutAnim;
-        this.sharedViews = sharedViews;
+        this.sharedViews = sharedViews == null || sharedViews.length == 0
+                ? NO_SHARED_VIEWS : sharedViews.clone();
     }
 
     /**
@@ -166,7 +167,21 @@ public class FragmentAnimation {
         return popOutAnim != NO_ANIMATION || pushInAnim != NO_ANIMATION;
     }
 
+    /**
+     * Retrieves the Lollipop Animations
+     *
+     * @return Copy of the Lollipop Animations, empty if there are none
+     */
     public LollipopAnim[] getSharedViews() {
-        return sharedViews;
+        return sharedViews.length == 0 ? sharedViews : sharedViews.clone();
+    }
+
+    /**
+     * Checks if there are Lollipop Animations without copying them.
+     *
+     * @return TRUE if there is any Lollipop Animation, FALSE otherwise
+     */
+    public boolean hasSharedViews() {
+        return sharedViews.length > 0;
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+
+/**
+ * Lightweight description of a navigation destination: the Fragment class, its arguments and its
+ * tag.
+ * <p/>
+ * Navigating to a FragmentDestination instead of to a Fragment instance lets the
+ * {@link NavigationManager NavigationManager} create the Fragment only when the transaction is
+ * committed, so navigations that are rejected or superseded never build their Fragment.
+ */
+public class FragmentDestination {
+
+    private final Class<? extends Fragment> fragmentClass;
+    private final Bundle arguments;
+    private final String tag;
+    private final boolean singleInstance;
+
+    /**
+     * Creates a destination for a Fragment which is not single instance.
+     *
+     * @param fragmentClass Fragment class, which must implement {@link NavigationFragment} and have
+     *                      a public empty constructor
+     * @param arguments     Arguments to set to the Fragment, can be null
+     * @param tag           Tag of the Fragment
+     */
+    public FragmentDestination(Class<? extends Fragment> fragmentClass, Bundle arguments,
+                               String tag) {
+        this(fragmentClass, arguments, tag, false);
+    }
+
+    /**
+     * Creates a destination.
+     *
+     * @param fragmentClass  Fragment class, which must implement {@link NavigationFragment} and
+     *                       have a public empty constructor
+     * @param arguments      Arguments to set to the Fragment, can be null
+     * @param tag            Tag of the Fragment
+     * @param singleInstance Same value the Fragment returns in
+     *                       {@link NavigationFragment#isSingleInstance() isSingleInstance()}
+     */
+    public FragmentDestination(Class<? extends Fragment> fragmentClass, Bundle arguments,
+                               String tag, boolean singleInstance) {
+        if (fragmentClass == null || !NavigationFragment.class.isAssignableFrom(fragmentClass)) {
+            throw new IllegalArgumentException("The destination must be a NavigationFragment");
+        }
+        this.fragmentClass = fragmentClass;
+        this.arguments = arguments;
+        this.tag = tag;
+        this.singleInstance = singleInstance;
+    }
+
+    public Class<? extends Fragment> getFragmentClass() {
+        return fragmentClass;
+    }
+
+    public Bundle getArguments() {
+        return arguments;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public boolean isSingleInstance() {
+        return singleInstance;
+    }
+
+    /**
+     * Creates the Fragment described by this destination.
+     * <p/>
+     * The tag and the single instance flag of the destination are used before the Fragment exists,
+     * so they are checked against the ones of the Fragment created.
+     *
+     * @return New Fragment instance with the arguments of this destination
+     * @throws Fragment.InstantiationException if the Fragment cannot be created
+     * @throws IllegalStateException           if the Fragment does not have the tag or the single
+     *                                         instance flag of the destination
+     */
+    public Fragment instantiate() {
+        Fragment fragment;
+        try {
+            fragment = fragmentClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new Fragment.InstantiationException("Unable to instantiate fragment "
+                    + fragmentClass.getName() + ": make sure it has an empty public constructor", e);
+        } catch (IllegalAccessException e) {
+            throw new Fragment.InstantiationException("Unable to instantiate fragment "
+                    + fragmentClass.getName() + ": make sure it has an empty public constructor", e);
+        }
+        if (arguments != null) {
+            fragment.setArguments(arguments);
+        }
+        NavigationFragment navigationFragment = (NavigationFragment) fragment;
+        String fragmentTag = navigationFragment.getFragmentTag();
+        if (tag == null ? fragmentTag != null : !tag.equals(fragmentTag)) {
+            throw new IllegalStateException("The destination tag --'" + tag
+                    + "'-- does not match the tag of the fragment --'" + fragmentTag + "'--");
+        }
+        if (singleInstance != navigationFragment.isSingleInstance()) {
+            throw new IllegalStateException("The destination with tag --'" + tag
+                    + "'-- does not match the single instance flag of its fragment");
+        }
+        return fragment;
+    }
+}
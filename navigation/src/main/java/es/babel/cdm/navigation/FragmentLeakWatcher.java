@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.util.Log;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+import es.babel.cdm.navigation.interfaces.OnFragmentLeakListener;
+
+/**
+ * Debug tool detecting the Fragments that are still reachable after being destroyed, as the
+ * ones popped from the backstack or cleared by a section navigation.
+ * <p/>
+ * Every destroyed Fragment is watched through a weak reference. A check forces a garbage
+ * collection and reports the watched Fragments which were not collected, with their tag, to the
+ * {@link OnFragmentLeakListener listener} or to the log. Checks run automatically some time after
+ * a Fragment is destroyed, collecting the garbage on a background thread and reporting back on
+ * the main thread, and can be run from tests with {@link #check()} or {@link #assertNoLeaks()}.
+ * <p/>
+ * Forcing garbage collections is slow, so it is disabled by default and meant for debug builds
+ * and tests only.
+ */
+public class FragmentLeakWatcher extends FragmentManager.FragmentLifecycleCallbacks {
+
+    /**
+     * Default time given to the Fragments to be released before checking them
+     */
+    public static final long DEFAULT_CHECK_DELAY_MS = 5000;
+
+    private static final int GC_ATTEMPTS = 3;
+    private static final long GC_WAIT_MS = 100;
+
+    private static final Executor COLLECTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "NavigationLeakCheck");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private boolean enabled = false;
+    private long checkDelayMs = DEFAULT_CHECK_DELAY_MS;
+    private OnFragmentLeakListener listener;
+
+    private final ReferenceQueue<Fragment> queue = new ReferenceQueue<Fragment>();
+    private final ArrayList<WatchedFragment> watched = new ArrayList<WatchedFragment>();
+
+    private Handler handler;
+    private boolean checkScheduled = false;
+    private final Runnable scheduledCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkScheduled = false;
+            checkInBackground();
+        }
+    };
+
+    /**
+     * Enables or disables the watcher. Disabling it forgets every watched Fragment.
+     *
+     * @param enabled TRUE to watch the destroyed Fragments, FALSE otherwise
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            watched.clear();
+            if (handler != null) {
+                handler.removeCallbacks(scheduledCheck);
+                checkScheduled = false;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the time between the destruction of a Fragment and the automatic check.
+     *
+     * @param checkDelayMs Delay in milliseconds, 0 to only check on demand
+     */
+    public void setCheckDelayMs(long checkDelayMs) {
+        this.checkDelayMs = checkDelayMs;
+    }
+
+    public void setListener(OnFragmentLeakListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Watches a Fragment that is expected to be garbage collected soon.
+     *
+     * @param fragment Fragment to watch
+     */
+    public void watch(Fragment fragment) {
+        if (!enabled || fragment == null) {
+            return;
+        }
+        watched.add(new WatchedFragment(fragment, queue));
+        if (checkDelayMs > 0 && !checkScheduled) {
+            if (handler == null) {
+                handler = new Handler(Looper.getMainLooper());
+            }
+            handler.postDelayed(scheduledCheck, checkDelayMs);
+            checkScheduled = true;
+        }
+    }
+
+    /**
+     * Number of watched Fragments which have not been collected yet.
+     *
+     * @return Watched Fragment count
+     */
+    public int getWatchedCount() {
+        removeCollected();
+        return watched.size();
+    }
+
+    /**
+     * Forces a garbage collection and reports the watched Fragments still reachable. Blocks the
+     * calling thread while collecting.
+     *
+     * @return Leaked Fragments, empty if there are none
+     */
+    public List<Leak> check() {
+        if (watched.isEmpty()) {
+            return Collections.emptyList();
+        }
+        WatchedFragment[] candidates = watched.toArray(new WatchedFragment[watched.size()]);
+        collectGarbage(candidates);
+        return findLeaks(candidates);
+    }
+
+    /**
+     * Checks the watched Fragments, failing if any of them leaked. Meant for tests.
+     *
+     * @throws AssertionError if there is any leaked Fragment
+     */
+    public void assertNoLeaks() {
+        List<Leak> leaks = check();
+        if (!leaks.isEmpty()) {
+            throw new AssertionError(leaks.size() + " leaked Fragment(s): " + leaks);
+        }
+    }
+
+    @Override
+    public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        watch(f);
+    }
+
+    /**
+     * Collects the garbage on a background thread, so the main thread is not blocked, and reports
+     * the leaks back on the main thread. Only the Fragments watched at this point are checked,
+     * the ones destroyed later get the full delay before their own check.
+     */
+    private void checkInBackground() {
+        if (watched.isEmpty()) {
+            return;
+        }
+        final WatchedFragment[] candidates = watched.toArray(new WatchedFragment[watched.size()]);
+        COLLECTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                collectGarbage(candidates);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        findLeaks(candidates);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Forces garbage collections until the given Fragments are collected or the attempts run out.
+     * Only reads the weak references, so it can run on any thread.
+     *
+     * @param candidates Watched Fragments expected to be collected
+     */
+    private static void collectGarbage(WatchedFragment[] candidates) {
+        for (int i = 0; i < GC_ATTEMPTS; i++) {
+            collectGarbage();
+            if (areCollected(candidates)) {
+                break;
+            }
+        }
+    }
+
+    private static boolean areCollected(WatchedFragment[] candidates) {
+        for (WatchedFragment candidate : candidates) {
+            if (candidate.get() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports the given Fragments that are still reachable and watched, each of them only once.
+     *
+     * @param candidates Watched Fragments to check
+     * @return Leaked Fragments, empty if there are none
+     */
+    private List<Leak> findLeaks(WatchedFragment[] candidates) {
+        removeCollected();
+        ArrayList<Leak> leaks = new ArrayList<Leak>();
+        for (WatchedFragment reference : candidates) {
+            if (reference.get() == null || !watched.contains(reference)) {
+                continue;
+            }
+            Leak leak = new Leak(reference.tag, reference.className);
+            leaks.add(leak);
+            if (!reference.reported) {
+                reference.reported = true;
+                report(leak);
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * Forgets the collected Fragments.
+     */
+    private void removeCollected() {
+        WatchedFragment reference;
+        while ((reference = (WatchedFragment) queue.poll()) != null) {
+            watched.remove(reference);
+        }
+    }
+
+    private void report(Leak leak) {
+        if (listener != null) {
+            listener.onFragmentLeaked(leak.tag, leak.className);
+        } else {
+            Log.w("NAVIGATION FRAGMENT", "The fragment with tag --'" + leak.tag
+                    + "'-- (" + leak.className + ") is still reachable after being destroyed");
+        }
+    }
+
+    private static void collectGarbage() {
+        Runtime.getRuntime().gc();
+        try {
+            Thread.sleep(GC_WAIT_MS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        System.runFinalization();
+    }
+
+    /**
+     * Fragment still reachable after being destroyed
+     */
+    public static class Leak {
+
+        private final String tag;
+        private final String className;
+
+        Leak(String tag, String className) {
+            this.tag = tag;
+            this.className = className;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public String toString() {
+            return tag + " (" + className + ")";
+        }
+    }
+
+    /**
+     * Weak reference keeping what identifies the Fragment once it is gone
+     */
+    private static class WatchedFragment extends WeakReference<Fragment> {
+
+        final String tag;
+        final String className;
+        boolean reported = false;
+
+        WatchedFragment(Fragment fragment, ReferenceQueue<Fragment> queue) {
+            super(fragment, queue);
+            this.tag = fragment instanceof NavigationFragment
+                    ? ((NavigationFragment) fragment).getFragmentTag() : fragment.getTag();
+            this.className = fragment.getClass().getName();
+        }
+    }
+}
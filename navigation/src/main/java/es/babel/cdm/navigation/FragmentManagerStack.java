@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.view.View;
+
+import es.babel.cdm.navigation.interfaces.NavigationStack;
+
+/**
+ * {@link NavigationStack} backed by a FragmentManager. Every call is forwarded as is.
+ */
+public class FragmentManagerStack implements NavigationStack {
+
+    private final FragmentManager fm;
+
+    public FragmentManagerStack(FragmentManager fm) {
+        this.fm = fm;
+    }
+
+    public FragmentManager getFragmentManager() {
+        return fm;
+    }
+
+    @Override
+    public Transaction beginTransaction() {
+        return wrap(fm.beginTransaction());
+    }
+
+    /**
+     * Wraps a FragmentTransaction of this stack. Every transaction gets its own wrapper, so a
+     * transaction that is begun and never committed does not affect the next ones.
+     *
+     * @param ft FragmentTransaction to wrap
+     * @return Transaction forwarding to the FragmentTransaction
+     */
+    Transaction wrap(FragmentTransaction ft) {
+        return new FragmentManagerTransaction(ft);
+    }
+
+    /**
+     * Returns the FragmentTransaction behind a transaction of a FragmentManagerStack.
+     *
+     * @param transaction Transaction of any NavigationStack
+     * @return The FragmentTransaction, or null if the transaction is not backed by one
+     */
+    static FragmentTransaction unwrap(Transaction transaction) {
+        return transaction instanceof FragmentManagerTransaction
+                ? ((FragmentManagerTransaction) transaction).ft : null;
+    }
+
+    @Override
+    public boolean executePendingTransactions() {
+        return fm.executePendingTransactions();
+    }
+
+    @Override
+    public Fragment findFragmentById(int id) {
+        return fm.findFragmentById(id);
+    }
+
+    @Override
+    public Fragment findFragmentByTag(String tag) {
+        return fm.findFragmentByTag(tag);
+    }
+
+    @Override
+    public int getBackStackEntryCount() {
+        return fm.getBackStackEntryCount();
+    }
+
+    @Override
+    public FragmentManager.BackStackEntry getBackStackEntryAt(int index) {
+        return fm.getBackStackEntryAt(index);
+    }
+
+    @Override
+    public void popBackStack(String name, int flags) {
+        fm.popBackStack(name, flags);
+    }
+
+    @Override
+    public boolean popBackStackImmediate() {
+        return fm.popBackStackImmediate();
+    }
+
+    @Override
+    public boolean popBackStackImmediate(String name, int flags) {
+        return fm.popBackStackImmediate(name, flags);
+    }
+
+    @Override
+    public boolean popBackStackImmediate(int id, int flags) {
+        return fm.popBackStackImmediate(id, flags);
+    }
+
+    @Override
+    public void addOnBackStackChangedListener(FragmentManager.OnBackStackChangedListener listener) {
+        fm.addOnBackStackChangedListener(listener);
+    }
+
+    @Override
+    public void removeOnBackStackChangedListener(
+            FragmentManager.OnBackStackChangedListener listener) {
+        fm.removeOnBackStackChangedListener(listener);
+    }
+
+    @Override
+    public void registerFragmentLifecycleCallbacks(
+            FragmentManager.FragmentLifecycleCallbacks callbacks) {
+        fm.registerFragmentLifecycleCallbacks(callbacks, false);
+    }
+
+    @Override
+    public void unregisterFragmentLifecycleCallbacks(
+            FragmentManager.FragmentLifecycleCallbacks callbacks) {
+        fm.unregisterFragmentLifecycleCallbacks(callbacks);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return fm.isDestroyed();
+    }
+
+    @Override
+    public Fragment.SavedState saveFragmentInstanceState(Fragment fragment) {
+        return fm.saveFragmentInstanceState(fragment);
+    }
+
+    /**
+     * Transaction forwarding to a FragmentTransaction
+     */
+    private static class FragmentManagerTransaction implements Transaction {
+
+        private final FragmentTransaction ft;
+
+        FragmentManagerTransaction(FragmentTransaction ft) {
+            this.ft = ft;
+        }
+
+        @Override
+        public Transaction add(Fragment fragment, String tag) {
+            ft.add(fragment, tag);
+            return this;
+        }
+
+        @Override
+        public Transaction add(int containerId, Fragment fragment, String tag) {
+            ft.add(containerId, fragment, tag);
+            return this;
+        }
+
+        @Override
+        public Transaction replace(int containerId, Fragment fragment, String tag) {
+            ft.replace(containerId, fragment, tag);
+            return this;
+        }
+
+        @Override
+        public Transaction remove(Fragment fragment) {
+            ft.remove(fragment);
+            return this;
+        }
+
+        @Override
+        public Transaction hide(Fragment fragment) {
+            ft.hide(fragment);
+            return this;
+        }
+
+        @Override
+        public Transaction detach(Fragment fragment) {
+            ft.detach(fragment);
+            return this;
+        }
+
+        @Override
+        public Transaction attach(Fragment fragment) {
+            ft.attach(fragment);
+            return this;
+        }
+
+        @Override
+        public Transaction setCustomAnimations(int enter, int exit) {
+            ft.setCustomAnimations(enter, exit);
+            return this;
+        }
+
+        @Override
+        public Transaction setCustomAnimations(int enter, int exit, int popEnter, int popExit) {
+            ft.setCustomAnimations(enter, exit, popEnter, popExit);
+            return this;
+        }
+
+        @Override
+        public Transaction addSharedElement(View sharedElement, String name) {
+            ft.addSharedElement(sharedElement, name);
+            return this;
+        }
+
+        @Override
+        public Transaction addToBackStack(String name) {
+            ft.addToBackStack(name);
+            return this;
+        }
+
+        @Override
+        public Transaction setAllowOptimization(boolean allowOptimization) {
+            ft.setAllowOptimization(allowOptimization);
+            return this;
+        }
+
+        @Override
+        public int commit() {
+            return ft.commit();
+        }
+
+        @Override
+        public int commitAllowingStateLoss() {
+            return ft.commitAllowingStateLoss();
+        }
+
+        @Override
+        public void commitNow() {
+            ft.commitNow();
+        }
+
+        @Override
+        public void commitNowAllowingStateLoss() {
+            ft.commitNowAllowingStateLoss();
+        }
+    }
+}
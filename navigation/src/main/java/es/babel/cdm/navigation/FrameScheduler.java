@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Runs an action once on the next frame, no matter how many times it is scheduled before it.
+ * <p/>
+ * Uses {@link Choreographer} when available and falls back to the main thread Handler otherwise.
+ */
+abstract class FrameScheduler {
+
+    /**
+     * Action receiving the time of the frame it runs on
+     */
+    interface FrameAction {
+        /**
+         * @param frameTimeNanos Time of the frame, as reported by {@link Choreographer}, or the
+         *                       current time when falling back to a Handler
+         */
+        void doFrame(long frameTimeNanos);
+    }
+
+    protected final FrameAction action;
+    protected boolean scheduled = false;
+
+    FrameScheduler(FrameAction action) {
+        this.action = action;
+    }
+
+    static FrameScheduler create(final Runnable action) {
+        return create(new FrameAction() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                action.run();
+            }
+        });
+    }
+
+    static FrameScheduler create(FrameAction action) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return new ChoreographerScheduler(action);
+        }
+        return new HandlerScheduler(action);
+    }
+
+    /**
+     * Schedules the action for the next frame if it is not already scheduled.
+     */
+    void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            post();
+        }
+    }
+
+    /**
+     * Cancels the scheduled action, if any.
+     */
+    void cancel() {
+        if (scheduled) {
+            scheduled = false;
+            remove();
+        }
+    }
+
+    protected void run(long frameTimeNanos) {
+        scheduled = false;
+        action.doFrame(frameTimeNanos);
+    }
+
+    protected abstract void post();
+
+    protected abstract void remove();
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerScheduler extends FrameScheduler
+            implements Choreographer.FrameCallback {
+
+        ChoreographerScheduler(FrameAction action) {
+            super(action);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            run(frameTimeNanos);
+        }
+
+        @Override
+        protected void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        protected void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    private static class HandlerScheduler extends FrameScheduler implements Runnable {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        HandlerScheduler(FrameAction action) {
+            super(action);
+        }
+
+        @Override
+        public void run() {
+            run(System.nanoTime());
+        }
+
+        @Override
+        protected void post() {
+            handler.post(this);
+        }
+
+        @Override
+        protected void remove() {
+            handler.removeCallbacks(this);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+/**
+ * Low overhead latency histogram with logarithmic buckets.
+ * <p/>
+ * Bucket 0 holds the values under 1 millisecond and every following bucket doubles the upper
+ * bound of the previous one, the last bucket holding everything over it. Recording a value does
+ * not allocate.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of buckets. The last one starts at 2^(BUCKET_COUNT - 2) milliseconds
+     */
+    public static final int BUCKET_COUNT = 16;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long sumNanos = 0;
+    private long maxNanos = 0;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        buckets[bucketOf(nanos)]++;
+        count++;
+        sumNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Mean of the recorded latencies.
+     *
+     * @return Mean in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getMeanNanos() {
+        return count == 0 ? 0 : sumNanos / count;
+    }
+
+    /**
+     * Maximum recorded latency.
+     *
+     * @return Maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Number of latencies recorded in a bucket.
+     *
+     * @param bucket Bucket index, from 0 to {@link #BUCKET_COUNT BUCKET_COUNT} - 1
+     * @return Number of latencies in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    /**
+     * Upper bound of a bucket.
+     *
+     * @param bucket Bucket index, from 0 to {@link #BUCKET_COUNT BUCKET_COUNT} - 1
+     * @return Upper bound in nanoseconds, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Approximates a percentile with the upper bound of the bucket it falls in, capped by the
+     * maximum recorded latency.
+     *
+     * @param percentile Percentile, from 0 to 100
+     * @return Approximated percentile in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100d);
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += buckets[i];
+            if (accumulated >= target) {
+                return Math.min(getBucketUpperBoundNanos(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Discards every recorded latency.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        sumNanos = 0;
+        maxNanos = 0;
+    }
+
+    private static int bucketOf(long nanos) {
+        long millis = nanos / NANOS_PER_MILLI;
+        if (millis == 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1;
+    }
+}
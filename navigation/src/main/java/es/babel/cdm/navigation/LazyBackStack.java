@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.content.Context;
+import android.support.v4.app.Fragment;
+import android.util.Log;
+
+import java.util.List;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+
+/**
+ * Entries of a {@link BackStackSnapshot BackStackSnapshot} restored lazily by the
+ * {@link NavigationManager NavigationManager}.
+ * <p/>
+ * Only the Fragment on top of the snapshot is created on restore. It is placed at the bottom of
+ * the container with no FragmentManager backstack entry, and every entry below it is kept as a
+ * placeholder holding only its class, tag, arguments and saved state. Navigating up from the
+ * bottom Fragment replaces it with the Fragment of the placeholder below, which is only created
+ * then.
+ */
+public class LazyBackStack {
+
+    private final Context context;
+    private final BackStackSnapshot snapshot;
+
+    /**
+     * Placeholders still below the bottom Fragment, which is the entry at this position
+     */
+    private int pending;
+
+    /**
+     * Whether the bottom Fragment counts as a backstack entry
+     */
+    private boolean bottomInBackStack;
+
+    private Fragment bottom;
+
+    LazyBackStack(Context context, BackStackSnapshot snapshot) {
+        this.context = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+        this.snapshot = snapshot;
+        this.pending = snapshot.size() - 1;
+        this.bottomInBackStack = snapshot.isInBackStack(pending);
+    }
+
+    /**
+     * Number of backstack entries still handled lazily, the bottom Fragment included.
+     *
+     * @return Number of lazy entries
+     */
+    public int size() {
+        return pending + (bottomInBackStack ? 1 : 0);
+    }
+
+    /**
+     * Number of placeholders whose Fragment has not been created yet.
+     *
+     * @return Number of placeholders
+     */
+    public int getPlaceholderCount() {
+        return pending;
+    }
+
+    /**
+     * Fragment currently at the bottom of the container, with no FragmentManager backstack entry.
+     *
+     * @return Bottom Fragment
+     */
+    public Fragment getBottom() {
+        return bottom;
+    }
+
+    boolean isBottomInBackStack() {
+        return bottomInBackStack;
+    }
+
+    /**
+     * Creates the Fragment of the bottom entry and makes it the bottom Fragment.
+     *
+     * @return Fragment or null if it could not be created
+     */
+    Fragment createBottom() {
+        bottom = instantiate(pending);
+        return bottom;
+    }
+
+    /**
+     * Drops some levels, creating the Fragment of the placeholder that becomes the bottom one.
+     *
+     * @param levels Levels to drop, the bottom Fragment being the first one
+     * @return New bottom Fragment, or null if every lazy entry was dropped or the Fragment could
+     * not be created
+     */
+    Fragment drop(int levels) {
+        pending -= levels;
+        bottom = pending >= 0 ? instantiate(pending) : null;
+        if (bottom == null) {
+            pending = 0;
+            bottomInBackStack = false;
+        } else {
+            bottomInBackStack = true;
+        }
+        return bottom;
+    }
+
+    String tagOfBottom() {
+        return bottom instanceof NavigationFragment
+                ? ((NavigationFragment) bottom).getFragmentTag() : snapshot.getTag(pending);
+    }
+
+    /**
+     * Copies the placeholders into the entries of a new snapshot.
+     *
+     * @param entries Entries of the new snapshot
+     */
+    void copyTo(List<BackStackSnapshot.Entry> entries) {
+        for (int i = 0; i < pending; i++) {
+            entries.add(new BackStackSnapshot.Entry(snapshot.getTag(i), snapshot.getClassName(i),
+                    snapshot.getMarshalledArguments(i), snapshot.getMarshalledState(i),
+                    true));
+        }
+    }
+
+    private Fragment instantiate(int position) {
+        try {
+            return snapshot.instantiate(context, position);
+        } catch (Fragment.InstantiationException e) {
+            Log.e("NAVIGATION FRAGMENT", "The fragment with tag --'" + snapshot.getTag(position)
+                    + "'-- could not be restored", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+
+import java.util.WeakHashMap;
+
+import es.babel.cdm.navigation.interfaces.NavigationStack;
+
+/**
+ * Policy limiting the number of Fragments of the backstack that keep their view hierarchy
+ * inflated.
+ * <p/>
+ * Fragments deeper than the limit are detached in the transaction that covers them, which destroys
+ * their views but keeps the Fragment and its saved view state. Popping that transaction attaches
+ * them again, re-creating their views lazily when the user gets back to them.
+ * <p/>
+ * Views can also be {@link #shed(NavigationStack.Transaction, Fragment) shed} outside of the backstack
+ * transactions, for example on memory pressure. Those Fragments have to be attached again by the
+ * caller when they get back to the top.
+ */
+public class LiveViewPolicy extends FragmentManager.FragmentLifecycleCallbacks {
+
+    /**
+     * Value for an unlimited number of live views
+     */
+    public static final int UNLIMITED = 0;
+
+    private int maxLiveViews = UNLIMITED;
+
+    private final WeakHashMap<Fragment, Boolean> evicted = new WeakHashMap<Fragment, Boolean>();
+    private final WeakHashMap<Fragment, Boolean> shed = new WeakHashMap<Fragment, Boolean>();
+
+    private int evictionCount = 0;
+    private int reinflationCount = 0;
+    private int shedCount = 0;
+
+    /**
+     * Sets the maximum number of Fragments that keep their views, the top one included.
+     *
+     * @param maxLiveViews Maximum number of inflated views or {@link #UNLIMITED UNLIMITED}
+     */
+    public void setMaxLiveViews(int maxLiveViews) {
+        this.maxLiveViews = maxLiveViews < 0 ? UNLIMITED : maxLiveViews;
+    }
+
+    public int getMaxLiveViews() {
+        return maxLiveViews;
+    }
+
+    /**
+     * Number of times a Fragment view has been evicted because of the limit of live views.
+     *
+     * @return Eviction count
+     */
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Number of times an evicted Fragment view has been created again.
+     *
+     * @return Re-inflation count
+     */
+    public int getReinflationCount() {
+        return reinflationCount;
+    }
+
+    /**
+     * Number of times a Fragment view has been {@link #shed(NavigationStack.Transaction, Fragment)
+     * shed}, counted apart from the evictions of the limit.
+     *
+     * @return Shed count
+     */
+    public int getShedCount() {
+        return shedCount;
+    }
+
+    /**
+     * Evicts, if needed, the view that goes over the limit when a new Fragment is added on top of
+     * the backstack.
+     *
+     * @param backStack Current backstack, before adding the new Fragment
+     * @param ft        Transaction adding the new Fragment to the backstack
+     */
+    public void onFragmentCovered(BackStackIndex backStack, NavigationStack.Transaction ft) {
+        if (maxLiveViews == UNLIMITED) {
+            return;
+        }
+        // Once the new Fragment is added, the entry at this position is the first one over the limit
+        int position = backStack.size() - maxLiveViews;
+        if (position < 0) {
+            return;
+        }
+        evict(ft, backStack.fragmentAt(position));
+    }
+
+    /**
+     * Detaches the view of a Fragment in a transaction which is not going to be added to the
+     * backstack, so popping the backstack will not attach it again.
+     *
+     * @param ft       Transaction to detach the Fragment in
+     * @param fragment Fragment whose view has to be released
+     * @return TRUE if the Fragment had a view to release, FALSE otherwise
+     */
+    public boolean shed(NavigationStack.Transaction ft, Fragment fragment) {
+        if (hasLiveView(fragment)) {
+            ft.detach(fragment);
+            shed.put(fragment, Boolean.TRUE);
+            shedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a Fragment is detached because its view was {@link #shed(NavigationStack.Transaction,
+     * Fragment) shed}.
+     *
+     * @param fragment Fragment to check
+     * @return TRUE if the Fragment has to be attached again by the caller, FALSE otherwise
+     */
+    public boolean isShed(Fragment fragment) {
+        return fragment != null && shed.containsKey(fragment);
+    }
+
+    /**
+     * Attaches again a Fragment whose view was {@link #shed(NavigationStack.Transaction, Fragment)
+     * shed}.
+     *
+     * @param ft       Transaction to attach the Fragment in
+     * @param fragment Shed Fragment
+     */
+    public void attachShed(NavigationStack.Transaction ft, Fragment fragment) {
+        ft.attach(fragment);
+        shed.remove(fragment);
+    }
+
+    private void evict(NavigationStack.Transaction ft, Fragment fragment) {
+        if (hasLiveView(fragment)) {
+            ft.detach(fragment);
+            evicted.put(fragment, Boolean.TRUE);
+            evictionCount++;
+        }
+    }
+
+    private boolean hasLiveView(Fragment fragment) {
+        // A detached Fragment may keep its view until the transaction is executed
+        return fragment != null && !fragment.isDetached() && fragment.getView() != null
+                && !evicted.containsKey(fragment) && !shed.containsKey(fragment);
+    }
+
+    @Override
+    public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v,
+                                      Bundle savedInstanceState) {
+        shed.remove(f);
+        if (evicted.remove(f) != null) {
+            reinflationCount++;
+        }
+    }
+
+    @Override
+    public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        evicted.remove(f);
+        shed.remove(f);
+    }
+}
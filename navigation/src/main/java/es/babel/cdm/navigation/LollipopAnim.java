@@ -44,7 +44,7 @@ public class LollipopAnim {
      *             shared element.
      */
     public LollipopAnim(View view, String name) {
-        if (view != null || name == null || name.isEmpty()) {
+        if (view == null || name == null || name.isEmpty()) {
             throw new IllegalArgumentException("Components of the animation must not be empty");
         }
         this.name = name;
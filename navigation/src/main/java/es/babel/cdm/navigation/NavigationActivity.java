@@ -16,14 +16,20 @@
 
 package es.babel.cdm.navigation;
 
+import android.content.ComponentCallbacks2;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
 import android.support.v7.app.AppCompatActivity;
 
 import es.babel.cdm.navigation.interfaces.Exceptions;
 import es.babel.cdm.navigation.interfaces.NavigationController;
 import es.babel.cdm.navigation.interfaces.NavigationFragment;
+import es.babel.cdm.navigation.interfaces.OnBackStackLoadedListener;
 import es.babel.cdm.navigation.interfaces.OnActionNavigation;
+import es.babel.cdm.navigation.interfaces.OnNavigationMetricsListener;
+import es.babel.cdm.navigation.interfaces.OnPostponedTransitionListener;
+import es.babel.cdm.navigation.interfaces.OnTransitionJankListener;
 
 public class NavigationActivity extends AppCompatActivity implements NavigationController, Exceptions {
 
@@ -31,14 +37,49 @@ public class NavigationActivity extends AppCompatActivity implements NavigationC
     protected NavigationManager sNavigationManager;
     protected OnActionNavigation sOnActionNavigation;
 
-    protected FragmentAnimation sAnimation = new FragmentAnimation(
-            R.anim.fade_in, R.anim.fade_out, R.anim.fade_in, R.anim.fade_out);
+    /**
+     * Key of the token of the back stack kept off the saved instance state
+     */
+    protected static final String BACKSTACK_TOKEN_KEY = "navigation:backstack";
+
+    /**
+     * Key of the flag telling the root Fragment of the navigation has no backstack entry
+     */
+    protected static final String INITIAL_FRAGMENT_KEY = "navigation:initial";
+
+    protected boolean sPersistBackStackOffBundle = false;
+    protected boolean sRestoreBackStackLazily = false;
+    protected String sBackStackToken;
+    private BackStackStore sBackStackStore;
+
+    /**
+     * Stack removed from the container when the Activity was saved, until it is started again
+     */
+    private BackStackSnapshot sSavedSnapshot;
+
+    protected FragmentAnimation sAnimation = AnimationPresets.FADE;
+
+    /**
+     * Animation of the inverse navigations
+     */
+    protected FragmentAnimation sGoBackAnimation = AnimationPresets.CONTINUOUS_SLIDE_BACK;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        this.sNavigationManager = new NavigationManager();
-        this.sNavigationManager.initialize(getSupportFragmentManager());
+        NavigationManagerHolder holder = NavigationManagerHolder.of(getSupportFragmentManager());
+        if (holder.getNavigationManager() != null) {
+            this.sNavigationManager = holder.getNavigationManager();
+            this.sNavigationManager.rebind(getSupportFragmentManager());
+        } else {
+            this.sNavigationManager = new NavigationManager();
+            this.sNavigationManager.initialize(getSupportFragmentManager());
+            holder.setNavigationManager(sNavigationManager);
+            if (savedInstanceState != null) {
+                sNavigationManager.setInitialFragmentInstalled(
+                        savedInstanceState.getBoolean(INITIAL_FRAGMENT_KEY));
+            }
+        }
         sNavigationManager.setAnimation(sAnimation);
     }
 
@@ -57,6 +98,109 @@ public class NavigationActivity extends AppCompatActivity implements NavigationC
         return this;
     }
 
+    public NavigationActivity setGoBackAnimation(FragmentAnimation anim) {
+        this.sGoBackAnimation = anim;
+        return this;
+    }
+
+    public NavigationActivity setCoalesceTransactions(boolean coalesceTransactions) {
+        sNavigationManager.setCoalesceTransactions(coalesceTransactions);
+        return this;
+    }
+
+    public NavigationActivity setBringSingleInstanceToFront(boolean bringToFront) {
+        sNavigationManager.setBringSingleInstanceToFront(bringToFront);
+        return this;
+    }
+
+    public NavigationActivity setHideCoveredFragments(boolean hideCoveredFragments) {
+        sNavigationManager.setHideCoveredFragments(hideCoveredFragments);
+        return this;
+    }
+
+    public NavigationActivity setMaxLiveViews(int maxLiveViews) {
+        sNavigationManager.setMaxLiveViews(maxLiveViews);
+        return this;
+    }
+
+    public NavigationActivity setShedViewsOnTrimMemory(boolean shedViews) {
+        sNavigationManager.setShedViewsOnTrimMemory(shedViews);
+        return this;
+    }
+
+    public NavigationActivity setAtomicSectionSwitch(boolean atomicSectionSwitch) {
+        sNavigationManager.setAtomicSectionSwitch(atomicSectionSwitch);
+        return this;
+    }
+
+    public NavigationActivity setOnNavigationMetricsListener(OnNavigationMetricsListener listener) {
+        sNavigationManager.setOnNavigationMetricsListener(listener);
+        return this;
+    }
+
+    public NavigationActivity setTransitionJankTrackingEnabled(boolean enabled) {
+        sNavigationManager.setTransitionJankTrackingEnabled(enabled);
+        return this;
+    }
+
+    public NavigationActivity setOnTransitionJankListener(OnTransitionJankListener listener) {
+        sNavigationManager.setOnTransitionJankListener(listener);
+        return this;
+    }
+
+    public NavigationActivity setLeakDetectionEnabled(boolean enabled) {
+        sNavigationManager.setLeakDetectionEnabled(enabled);
+        return this;
+    }
+
+    public NavigationActivity setPostponedTransitionTimeout(long timeoutMs) {
+        sNavigationManager.setPostponedTransitionTimeout(timeoutMs);
+        return this;
+    }
+
+    public NavigationActivity setOnPostponedTransitionListener(OnPostponedTransitionListener listener) {
+        sNavigationManager.setOnPostponedTransitionListener(listener);
+        return this;
+    }
+
+    /**
+     * Keeps the navigation stack in the private storage of the application instead of the saved
+     * instance state, so deep stacks with big arguments do not overflow it. The class, tag,
+     * arguments and saved instance state of the Fragments are kept, see {@link BackStackSnapshot}.
+     * <p/>
+     * When the Activity is stopped the navigation Fragments are copied and removed from the
+     * container, so the FragmentManager only saves the Fragments outside the navigation, as
+     * dialogs. If the Activity is started again they are created again from the copy. If it was
+     * destroyed the stack is restored after {@link #onCreate(Bundle) onCreate}, once read in the
+     * background. {@link #onBackStackRestored(boolean) onBackStackRestored} is called in both
+     * cases. Configuration changes keep saving the FragmentManager state as usual.
+     */
+    public NavigationActivity setPersistBackStackOffBundle(boolean persist) {
+        this.sPersistBackStackOffBundle = persist;
+        return this;
+    }
+
+    /**
+     * Restores the navigation stack kept off the saved instance state creating only the Fragment on
+     * top. The rest are created when navigating up reaches them, see
+     * {@link NavigationManager#restoreLazily(android.content.Context, BackStackSnapshot)}. Only
+     * applies when {@link #setPersistBackStackOffBundle(boolean) the stack is kept off the bundle}.
+     */
+    public NavigationActivity setRestoreBackStackLazily(boolean lazily) {
+        this.sRestoreBackStackLazily = lazily;
+        return this;
+    }
+
+    /**
+     * Enables or disables the navigation trace sections of the whole process, not only of this
+     * Activity. See {@link NavigationTrace}.
+     *
+     * @param enabled TRUE to emit trace sections, FALSE otherwise
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        NavigationTrace.setEnabled(enabled);
+    }
+
     public NavigationActivity setOnActionNavigation(OnActionNavigation listener) {
         this.sOnActionNavigation = listener;
         return this;
@@ -73,56 +217,159 @@ public class NavigationActivity extends AppCompatActivity implements NavigationC
 
     @Override
     public void navigateToSection(Fragment fragment) throws Exception {
-        int flags = NavigationManager.ADD_TO_BACKSTACK & NavigationManager.CLEAR_BACKSTACK;
-
-        setFragment(fragment, flags);
+        navigateToSection(fragment, sAnimation);
     }
 
     @Override
     public void navigateToSectionInverse(Fragment fragment) throws Exception {
-        //Save previous animation
-        FragmentAnimation previousAnimation = this.sAnimation;
-
-        int flags = NavigationManager.ADD_TO_BACKSTACK & NavigationManager.CLEAR_BACKSTACK;
-
-        //Change animation
-        setGoBackAnimation();
-
-        setFragment(fragment, flags);
+        navigateToSection(fragment, sGoBackAnimation);
+    }
 
-        //Set new animation
-        this.config().setAnimation(previousAnimation);
+    /**
+     * Navigates to a section with the animation of this navigation only.
+     *
+     * @param fragment  Fragment of the section
+     * @param animation Animation of this navigation, null for none
+     * @throws Exception If the container has not been set
+     */
+    public void navigateToSection(Fragment fragment, FragmentAnimation animation) throws Exception {
+        int flags = NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK;
+
+        setFragment(fragment, animation, flags);
     }
 
     @Override
     public void navigateDown(Fragment fragment, boolean addToBackStack) throws Exception {
-        int flags = (addToBackStack ? NavigationManager.ADD_TO_BACKSTACK : NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
-
-        setFragment(fragment, flags);
+        navigateDown(fragment, addToBackStack, sAnimation);
     }
 
     @Override
     public void navigateDownInverse(Fragment fragment, boolean addToBackStack) throws Exception {
+        navigateDown(fragment, addToBackStack, sGoBackAnimation);
+    }
+
+    /**
+     * Navigates down with the animation of this navigation only.
+     *
+     * @param fragment       Fragment to navigate to
+     * @param addToBackStack TRUE to add the navigation to the backstack, FALSE otherwise
+     * @param animation      Animation of this navigation, null for none
+     * @throws Exception If the container has not been set
+     */
+    public void navigateDown(Fragment fragment, boolean addToBackStack, FragmentAnimation animation)
+            throws Exception {
         int flags = (addToBackStack ? NavigationManager.ADD_TO_BACKSTACK : NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
 
-        //Save previous animation
-        FragmentAnimation previousAnimation = this.sAnimation;
+        setFragment(fragment, animation, flags);
+    }
 
-        //Change animation
-        setGoBackAnimation();
+    /**
+     * Navigates to the section of a destination, creating its Fragment only when the navigation is
+     * committed. See {@link NavigationManager#addFragment(FragmentDestination, FragmentAnimation,
+     * int, int)}.
+     *
+     * @param destination Destination of the section
+     * @throws Exception If the container has not been set
+     */
+    public void navigateToSection(FragmentDestination destination) throws Exception {
+        navigateToSection(destination, sAnimation);
+    }
 
-        setFragment(fragment, flags);
+    /**
+     * Navigates to the section of a destination with the animation of the inverse navigations.
+     *
+     * @param destination Destination of the section
+     * @throws Exception If the container has not been set
+     */
+    public void navigateToSectionInverse(FragmentDestination destination) throws Exception {
+        navigateToSection(destination, sGoBackAnimation);
+    }
+
+    /**
+     * Navigates to the section of a destination with the animation of this navigation only.
+     *
+     * @param destination Destination of the section
+     * @param animation   Animation of this navigation, null for none
+     * @throws Exception If the container has not been set
+     */
+    public void navigateToSection(FragmentDestination destination, FragmentAnimation animation)
+            throws Exception {
+        int flags = NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK;
+
+        setDestination(destination, animation, flags);
+    }
+
+    /**
+     * Navigates down to a destination, creating its Fragment only when the navigation is
+     * committed.
+     *
+     * @param destination    Destination to navigate to
+     * @param addToBackStack TRUE to add the navigation to the backstack, FALSE otherwise
+     * @throws Exception If the container has not been set
+     */
+    public void navigateDown(FragmentDestination destination, boolean addToBackStack) throws Exception {
+        navigateDown(destination, addToBackStack, sAnimation);
+    }
+
+    /**
+     * Navigates down to a destination with the animation of the inverse navigations.
+     *
+     * @param destination    Destination to navigate to
+     * @param addToBackStack TRUE to add the navigation to the backstack, FALSE otherwise
+     * @throws Exception If the container has not been set
+     */
+    public void navigateDownInverse(FragmentDestination destination, boolean addToBackStack)
+            throws Exception {
+        navigateDown(destination, addToBackStack, sGoBackAnimation);
+    }
+
+    /**
+     * Navigates down to a destination with the animation of this navigation only.
+     *
+     * @param destination    Destination to navigate to
+     * @param addToBackStack TRUE to add the navigation to the backstack, FALSE otherwise
+     * @param animation      Animation of this navigation, null for none
+     * @throws Exception If the container has not been set
+     */
+    public void navigateDown(FragmentDestination destination, boolean addToBackStack,
+                             FragmentAnimation animation) throws Exception {
+        int flags = (addToBackStack ? NavigationManager.ADD_TO_BACKSTACK : NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
+
+        setDestination(destination, animation, flags);
+    }
+
+    /**
+     * Installs the first Fragment of the container right away, with no animation and no backstack
+     * entry, so the first frame already shows it. Call it from onCreate, after
+     * {@link #setContainer(int) setting the container}, only when there is no saved instance
+     * state. See {@link NavigationManager#setInitialFragment(Fragment, String, int)}.
+     *
+     * @param fragment First Fragment
+     * @throws Exception If the container has not been set
+     */
+    public void navigateToInitial(Fragment fragment) throws Exception {
+        if (sContainer == null) {
+            throw new Exception(CONTAINER_EXCEPTION);
+        }
 
-        //Set new animation
-        this.config().setAnimation(previousAnimation);
+        sNavigationManager.setInitialFragment(fragment,
+                ((NavigationFragment) fragment).getFragmentTag(), sContainer);
     }
 
-    private void setGoBackAnimation() {
-        this.config().setAnimation(new FragmentAnimation(
-                R.anim.continuous_slide_in_right,
-                R.anim.continuous_slide_out_right,
-                R.anim.continuous_slide_in_right,
-                R.anim.continuous_slide_out_right));
+    /**
+     * Installs the Fragment of a destination as the first Fragment of the container. See
+     * {@link #navigateToInitial(Fragment)}.
+     *
+     * @param destination First destination
+     * @throws Exception If the container has not been set
+     */
+    public void navigateToInitial(FragmentDestination destination) throws Exception {
+        if (sContainer == null) {
+            throw new Exception(CONTAINER_EXCEPTION);
+        }
+
+        sNavigationManager.setInitialFragment(destination.instantiate(), destination.getTag(),
+                sContainer);
     }
 
     @Override
@@ -144,24 +391,139 @@ public class NavigationActivity extends AppCompatActivity implements NavigationC
             throw new Exception(SIZE_STACK_EXCEPTION);
         }
 
-        for (int i = 0; i < levels; i++) {
-            sNavigationManager.popBackStack(sContainer);
-        }
+        sNavigationManager.popBackStackLevels(sContainer, levels);
     }
 
-    private void setFragment(Fragment fragment, int flags) throws Exception {
+    private void setFragment(Fragment fragment, FragmentAnimation animation, int flags)
+            throws Exception {
         if (sContainer == null) {
             throw new Exception(CONTAINER_EXCEPTION);
         }
 
         sNavigationManager.addFragment(fragment, ((NavigationFragment) fragment).getFragmentTag(),
-                sAnimation, flags, sContainer);
+                animation, flags, sContainer);
+    }
+
+    private void setDestination(FragmentDestination destination, FragmentAnimation animation,
+                                int flags) throws Exception {
+        if (sContainer == null) {
+            throw new Exception(CONTAINER_EXCEPTION);
+        }
+
+        sNavigationManager.addFragment(destination, animation, flags, sContainer);
+    }
+
+    public void startPostponedTransition(Fragment fragment) {
+        sNavigationManager.startPostponedTransition(fragment);
     }
 
     public boolean canActivityFinish() {
         return sNavigationManager.canActivityFinish();
     }
 
+    @Override
+    protected void onPostCreate(Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+        String token = savedInstanceState != null
+                ? savedInstanceState.getString(BACKSTACK_TOKEN_KEY) : null;
+        if (token != null) {
+            getBackStackStore().load(token, new OnBackStackLoadedListener() {
+                @Override
+                public void onBackStackLoaded(BackStackSnapshot snapshot) {
+                    // The file is read in the background, this Activity may be gone by now
+                    FragmentManager fm = getSupportFragmentManager();
+                    if (fm.isDestroyed() || !sNavigationManager.isBoundTo(fm)) {
+                        return;
+                    }
+                    restoreBackStack(snapshot);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (sSavedSnapshot != null) {
+            BackStackSnapshot snapshot = sSavedSnapshot;
+            sSavedSnapshot = null;
+            restoreBackStack(snapshot);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        // Before Android P the state is saved before onStop
+        moveBackStackOffBundle();
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(INITIAL_FRAGMENT_KEY, sNavigationManager.isInitialFragmentInstalled());
+        if (sSavedSnapshot != null) {
+            outState.putString(BACKSTACK_TOKEN_KEY, sBackStackToken);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        // From Android P the state is saved after onStop, when the FragmentManager cannot pop
+        moveBackStackOffBundle();
+        super.onStop();
+    }
+
+    /**
+     * Copies the navigation stack to the {@link BackStackStore} and removes it from the container,
+     * so the FragmentManager does not save it. The Fragments survive a configuration change, so
+     * the stack is only moved when the Activity is stopped for any other reason.
+     */
+    private void moveBackStackOffBundle() {
+        if (!sPersistBackStackOffBundle || sContainer == null || sSavedSnapshot != null
+                || isChangingConfigurations() || isFinishing()) {
+            return;
+        }
+        BackStackSnapshot snapshot = sNavigationManager.snapshot(sContainer);
+        sBackStackToken = getBackStackStore().save(getClass().getName(), snapshot,
+                sBackStackToken);
+        sNavigationManager.clearContainer(sContainer);
+        sSavedSnapshot = snapshot;
+    }
+
+    private void restoreBackStack(BackStackSnapshot snapshot) {
+        if (snapshot != null && sRestoreBackStackLazily) {
+            sNavigationManager.restoreLazily(this, snapshot);
+        } else if (snapshot != null) {
+            sNavigationManager.restore(this, snapshot);
+        }
+        onBackStackRestored(snapshot != null);
+    }
+
+    /**
+     * Called when the navigation stack kept off the saved instance state has been restored. If it
+     * could not be read, as when the process died before it was written, the container is empty
+     * and the initial Fragment should be navigated to again.
+     *
+     * @param restored TRUE if the stack was restored, FALSE otherwise
+     */
+    protected void onBackStackRestored(boolean restored) {
+    }
+
+    private BackStackStore getBackStackStore() {
+        if (sBackStackStore == null) {
+            sBackStackStore = new BackStackStore(this);
+        }
+        return sBackStackStore;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        sNavigationManager.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        sNavigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
     @Override
     public void onBackPressed() {
         if (sOnActionNavigation != null) {
@@ -16,13 +16,22 @@
 
 package es.babel.cdm.navigation;
 
+import android.content.ComponentCallbacks2;
+import android.content.Context;
 import android.os.Build;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
 import android.util.Log;
 
+import java.util.ArrayList;
+
 import es.babel.cdm.navigation.interfaces.NavigationFragment;
+import es.babel.cdm.navigation.interfaces.NavigationStack;
+import es.babel.cdm.navigation.interfaces.OnNavigationMetricsListener;
+import es.babel.cdm.navigation.interfaces.OnPostponedTransitionListener;
+import es.babel.cdm.navigation.interfaces.OnTransitionJankListener;
+import es.babel.cdm.navigation.interfaces.TrimMemoryAwareFragment;
 
 /**
  * NavigationManager wraps some common operations over Android's FragmentManager concerning the
@@ -62,11 +71,123 @@ public class NavigationManager {
 
     /**
      * Injected Fragment Manager
+     *
+     * @deprecated Use {@link #stack}. It is only set when the NavigationManager is initialized with
+     * a FragmentManager.
      */
+    @Deprecated
     protected FragmentManager fm;
 
+    /**
+     * Back stack the NavigationManager works on
+     */
+    protected NavigationStack stack;
+
+    /**
+     * In-memory mirror of the FragmentManager backstack
+     */
+    protected BackStackIndex backStack;
+
+    /**
+     * Tracks the NavigationFragment currently on screen
+     */
+    protected VisibleFragmentTracker visibleFragment = new VisibleFragmentTracker();
+
     protected FragmentAnimation animation;
 
+    /**
+     * Whether the navigations issued during a frame are merged and committed on the next one
+     */
+    protected boolean coalesceTransactions = false;
+
+    /**
+     * Navigations waiting for the next frame when transactions are coalesced
+     */
+    protected final ArrayList<PendingNavigation> pendingNavigations = new ArrayList<PendingNavigation>();
+
+    private FrameScheduler frameScheduler;
+
+    /**
+     * Whether single instance Fragments already in the backstack are brought back to the top
+     * instead of discarding the navigation
+     */
+    protected boolean bringSingleInstanceToFront = false;
+
+    /**
+     * Whether the Fragments covered by a {@link #DO_NOT_REPLACE_FRAGMENT DO_NOT_REPLACE_FRAGMENT}
+     * navigation are hidden
+     */
+    protected boolean hideCoveredFragments = false;
+
+    /**
+     * Whether {@link #onTrimMemory(int)} releases the views of the off-screen Fragments
+     */
+    protected boolean shedViewsOnTrimMemory = false;
+
+    /**
+     * Whether clearing the backstack and adding the new root are executed as a single optimized
+     * batch
+     */
+    protected boolean atomicSectionSwitch = false;
+
+    /**
+     * Limits the number of backstack Fragments keeping their views
+     */
+    protected LiveViewPolicy liveViewPolicy = new LiveViewPolicy();
+
+    /**
+     * Attaches again the Fragments whose views were shed on memory pressure when they get back to
+     * the top of the backstack
+     */
+    private final FragmentManager.OnBackStackChangedListener shedViewRestorer =
+            new FragmentManager.OnBackStackChangedListener() {
+                @Override
+                public void onBackStackChanged() {
+                    Fragment top = backStack.top();
+                    if (liveViewPolicy.isShed(top)) {
+                        NavigationStack.Transaction ft = stack.beginTransaction();
+                        liveViewPolicy.attachShed(ft, top);
+                        ft.commitAllowingStateLoss();
+                        shedViewRestorePending = true;
+                    }
+                }
+            };
+
+    private boolean shedViewRestorePending = false;
+
+    /**
+     * Navigation latency metrics, only measured while there is a listener
+     */
+    protected NavigationMetrics metrics = new NavigationMetrics();
+
+    /**
+     * Opt-in frame statistics of the animated transitions
+     */
+    protected TransitionJankTracker jankTracker = new TransitionJankTracker();
+
+    /**
+     * Debug watcher of the Fragments still reachable after being destroyed
+     */
+    protected FragmentLeakWatcher leakWatcher = new FragmentLeakWatcher();
+
+    /**
+     * Holds the shared element transitions until their destination is ready
+     */
+    protected TransitionPostponer transitionPostponer = new TransitionPostponer();
+
+    /**
+     * Entries below the bottom Fragment still waiting to be created after a
+     * {@link #restoreLazily(Context, BackStackSnapshot) lazy restore}, or null
+     */
+    protected LazyBackStack lazyBackStack;
+
+    /**
+     * Whether the bottom Fragment of the navigation was installed by
+     * {@link #setInitialFragment(Fragment, String, int) setInitialFragment}, so it has no backstack
+     * entry
+     */
+    protected boolean initialFragmentInstalled = false;
+
     /**
      * Creates a new instance of Navigation Manager
      */
@@ -79,7 +200,83 @@ public class NavigationManager {
      * @param fm FragmentManager to wrap around the NavigationManager.
      */
     public void initialize(FragmentManager fm) {
-        this.fm = fm;
+        initialize(new FragmentManagerStack(fm));
+    }
+
+    /**
+     * Initializes the Navigation Manager over any {@link NavigationStack}, as the in-memory stack
+     * the tests use to run the navigation off device.
+     *
+     * @param stack Back stack to navigate on
+     */
+    public void initialize(NavigationStack stack) {
+        this.stack = stack;
+        this.fm = stack instanceof FragmentManagerStack
+                ? ((FragmentManagerStack) stack).getFragmentManager() : null;
+        this.backStack = new BackStackIndex(stack);
+        stack.addOnBackStackChangedListener(backStack);
+        stack.addOnBackStackChangedListener(shedViewRestorer);
+        visibleFragment.clear();
+        stack.registerFragmentLifecycleCallbacks(visibleFragment);
+        stack.registerFragmentLifecycleCallbacks(liveViewPolicy);
+        stack.registerFragmentLifecycleCallbacks(metrics);
+        stack.registerFragmentLifecycleCallbacks(jankTracker);
+        stack.registerFragmentLifecycleCallbacks(leakWatcher);
+        stack.registerFragmentLifecycleCallbacks(transitionPostponer);
+    }
+
+    /**
+     * Binds a NavigationManager kept across a configuration change to the FragmentManager of the
+     * new Activity.
+     *
+     * @param fm FragmentManager of the new Activity
+     */
+    public void rebind(FragmentManager fm) {
+        rebind(new FragmentManagerStack(fm));
+    }
+
+    /**
+     * Binds the NavigationManager to a new {@link NavigationStack}, keeping its configuration,
+     * metrics and statistics. The backstack mirror and the Fragment on screen are built again from
+     * the new stack, and whatever only made sense for the Fragments of the previous one, as a
+     * pending lazy restore, is dropped. The listeners registered on the previous stack are
+     * removed from it.
+     *
+     * @param stack Back stack to navigate on from now on
+     */
+    public void rebind(NavigationStack stack) {
+        lazyBackStack = null;
+        if (this.stack != null) {
+            unbind(this.stack);
+        }
+        initialize(stack);
+    }
+
+    /**
+     * Checks if the NavigationManager navigates on a FragmentManager.
+     *
+     * @param fm FragmentManager to check
+     * @return TRUE if it is the FragmentManager of the current stack, FALSE otherwise
+     */
+    boolean isBoundTo(FragmentManager fm) {
+        return this.fm == fm;
+    }
+
+    /**
+     * Removes from a stack every listener and callback registered by
+     * {@link #initialize(NavigationStack)}.
+     *
+     * @param stack Stack the NavigationManager was initialized on
+     */
+    private void unbind(NavigationStack stack) {
+        stack.removeOnBackStackChangedListener(backStack);
+        stack.removeOnBackStackChangedListener(shedViewRestorer);
+        stack.unregisterFragmentLifecycleCallbacks(visibleFragment);
+        stack.unregisterFragmentLifecycleCallbacks(liveViewPolicy);
+        stack.unregisterFragmentLifecycleCallbacks(metrics);
+        stack.unregisterFragmentLifecycleCallbacks(jankTracker);
+        stack.unregisterFragmentLifecycleCallbacks(leakWatcher);
+        stack.unregisterFragmentLifecycleCallbacks(transitionPostponer);
     }
 
     /**
@@ -91,7 +288,7 @@ public class NavigationManager {
      * @return No flags if there are no fragments available or DO_NOT_REPLACE otherwise.
      */
     protected int calculateCorrectMode() {
-        return fm.getBackStackEntryCount() == 0 ? 0 : DO_NOT_REPLACE_FRAGMENT;
+        return backStack.size() == 0 ? 0 : DO_NOT_REPLACE_FRAGMENT;
     }
 
     /**
@@ -102,18 +299,21 @@ public class NavigationManager {
      * adding another instance of such fragment class}</li>
      * <li>{@link #processClearBackstack(int) Processing clearing backstack flags conditions}</li>
      * <li>{@link #processAddToBackstackFlag(String, int,
-     * android.support.v4.app.FragmentTransaction) Process adding to backstack flags
+     * es.babel.cdm.navigation.interfaces.NavigationStack.Transaction) Process adding to backstack flags
      * conditions}</li>
-     * <li>{@link #processAnimations(FragmentAnimation, android.support.v4.app.FragmentTransaction)
+     * <li>{@link #processAnimations(FragmentAnimation, es.babel.cdm.navigation.interfaces.NavigationStack.Transaction)
      * Process the state of the deserved animations if any}</li>
      * <li>{@link #performTransaction(android.support.v4.app.Fragment, int,
-     * android.support.v4.app.FragmentTransaction, int) Perform the actual transaction}</li>
+     * es.babel.cdm.navigation.interfaces.NavigationStack.Transaction, int) Perform the actual transaction}</li>
      * </ul>
      * <p/>
      * If the fragment is not required to be readded (as in a up navigation) the fragment manager
      * will pop all the backstack until the desired fragment and the
      * {@link NavigationFragment#onFragmentVisible() onFragmentVisible()}
      * method will be called instead to bring up the dormant fragment.
+     * <p/>
+     * If {@link #setCoalesceTransactions(boolean) transactions are coalesced} the navigation is
+     * queued and committed on the next frame together with the rest of navigations of this frame.
      *
      * @param frag        Fragment to add
      * @param tag         Fragment tag
@@ -124,39 +324,521 @@ public class NavigationManager {
                             int containerId) {
 
         if (frag != null) {
-            if (((NavigationFragment) frag).isSingleInstance()) {
-                if (fm.findFragmentByTag(tag) != null) { //El fragment está en la pila
-                    if (flags != (NavigationManager.ADD_TO_BACKSTACK
-                            & NavigationManager.CLEAR_BACKSTACK)) { //No viene de gotosection
+            if (coalesceTransactions) {
+                enqueue(new PendingNavigation(frag, tag, animation, flags, containerId));
+            } else {
+                metrics.markStart(metrics.now());
+                boolean traced = NavigationTrace.begin(NavigationTrace.ADD_FRAGMENT, tag, flags);
+                try {
+                    commitFragment(frag, tag, animation, flags, containerId, false);
+                } finally {
+                    NavigationTrace.end(traced);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the Fragment described by a destination. Works as
+     * {@link #addFragment(Fragment, String, FragmentAnimation, int, int) addFragment} but the
+     * Fragment is only created when the transaction is committed, so no Fragment is built for
+     * navigations rejected because of {@link FragmentDestination#isSingleInstance() single
+     * instance} or superseded by a later navigation of the same frame.
+     *
+     * @param destination Destination to navigate to
+     * @param animation   Animation of the transaction
+     * @param flags       Adds flags to manipulate the state of the backstack
+     * @param containerId Container ID where to insert the fragment
+     */
+    public void addFragment(FragmentDestination destination, FragmentAnimation animation, int flags,
+                            int containerId) {
+        if (destination != null) {
+            if (coalesceTransactions) {
+                enqueue(new PendingNavigation(destination, animation, flags, containerId));
+            } else {
+                metrics.markStart(metrics.now());
+                boolean traced = NavigationTrace.begin(NavigationTrace.ADD_FRAGMENT, destination.getTag(), flags);
+                try {
+                    commitDestination(destination, animation, flags, containerId, false);
+                } finally {
+                    NavigationTrace.end(traced);
+                }
+            }
+        }
+    }
+
+    private void enqueue(PendingNavigation navigation) {
+        navigation.startNanos = metrics.now();
+        pendingNavigations.add(navigation);
+        getFrameScheduler().schedule();
+    }
+
+    /**
+     * Installs the first Fragment of a container synchronously, with no animation and no backstack
+     * entry, so it is already in place when the first frame is drawn instead of showing an empty
+     * container until the transaction runs.
+     * <p/>
+     * Meant to be called from the onCreate method of the Activity when there is no saved state to
+     * restore. Any Fragment already in the container is replaced.
+     *
+     * @param frag        Fragment to install
+     * @param tag         Fragment tag
+     * @param containerId Container ID where to insert the fragment
+     */
+    public void setInitialFragment(Fragment frag, String tag, int containerId) {
+        if (frag == null || stack.isDestroyed()) {
+            return;
+        }
+        metrics.markStart(metrics.now());
+        boolean traced = NavigationTrace.begin(NavigationTrace.ADD_FRAGMENT, tag, DO_NOT_ADD_TO_BACKSTACK);
+        try {
+            // Registered before the commit, which creates the Fragment right away
+            metrics.onCommitted(frag, tag, DO_NOT_ADD_TO_BACKSTACK);
+            stack.beginTransaction()
+                    .replace(containerId, frag, tag)
+                    .commitNowAllowingStateLoss();
+            initialFragmentInstalled = true;
+        } finally {
+            NavigationTrace.end(traced);
+        }
+    }
+
+    /**
+     * Builds and commits the transaction for a single navigation.
+     *
+     * @param frag              Fragment to add
+     * @param tag               Fragment tag
+     * @param animation         Animation of the transaction, null for none
+     * @param flags             Adds flags to manipulate the state of the backstack
+     * @param containerId       Container ID where to insert the fragment
+     * @param allowOptimization Lets the FragmentManager optimize this transaction together with
+     *                          the rest of transactions executed in the same batch
+     */
+    protected void commitFragment(Fragment frag, String tag, FragmentAnimation animation, int flags,
+                                  int containerId, boolean allowOptimization) {
+        if (handleExistingSingleInstance(((NavigationFragment) frag).isSingleInstance(), tag, flags,
+                containerId)) {
+            return;
+        }
+        commitTransaction(frag, tag, animation, flags, containerId, allowOptimization);
+    }
+
+    /**
+     * Builds and commits the transaction for a single navigation to a destination, creating its
+     * Fragment only if the navigation is not rejected.
+     *
+     * @param destination       Destination to navigate to
+     * @param animation         Animation of the transaction, null for none
+     * @param flags             Adds flags to manipulate the state of the backstack
+     * @param containerId       Container ID where to insert the fragment
+     * @param allowOptimization Lets the FragmentManager optimize this transaction together with
+     *                          the rest of transactions executed in the same batch
+     */
+    protected void commitDestination(FragmentDestination destination, FragmentAnimation animation,
+                                     int flags, int containerId, boolean allowOptimization) {
+        if (handleExistingSingleInstance(destination.isSingleInstance(), destination.getTag(), flags,
+                containerId)) {
+            return;
+        }
+        commitTransaction(destination.instantiate(), destination.getTag(), animation, flags,
+                containerId, allowOptimization);
+    }
+
+    /**
+     * Checks if a single instance Fragment is already in the backstack, or on screen without a
+     * backstack entry, and handles it.
+     * <p/>
+     * If {@link #setBringSingleInstanceToFront(boolean) bringing to front} is enabled and the
+     * navigation does not clear the backstack, the existing instance is
+     * {@link #bringToFront(String) brought back to the top}. Otherwise the navigation is discarded.
+     *
+     * @param singleInstance If the Fragment is single instance
+     * @param tag            Fragment tag
+     * @param flags          Added flags to the Fragment configuration
+     * @param containerId    Container ID where the fragment would be inserted
+     * @return TRUE if the navigation has been handled and no Fragment has to be added, FALSE
+     * otherwise
+     */
+    protected boolean handleExistingSingleInstance(boolean singleInstance, String tag, int flags,
+                                                   int containerId) {
+        if (singleInstance) {
+            boolean inBackStack = backStack.contains(tag);
+            if (inBackStack || isInContainer(tag, containerId)) { //El fragment está en la pila
+                if ((flags & CLEAR_BACKSTACK) != CLEAR_BACKSTACK) { //No viene de gotosection
+                    if (bringSingleInstanceToFront) {
+                        // A Fragment on screen without backstack entry is already on top
+                        if (inBackStack) {
+                            bringToFront(tag);
+                        }
+                    } else {
                         Log.e("NAVIGATION FRAGMENT", "The fragment with tag --'" + tag
                                 + "'-- is SingleInstance and it is already in the backstack");
-                        return;
                     }
+                    return true;
                 }
             }
-            FragmentTransaction ft = fm.beginTransaction();
-            processClearBackstack(flags);
-            processAddToBackstackFlag(tag, flags, ft);
-            processAnimations(animation, ft);
-            performTransaction(frag, flags, ft, containerId);
         }
+        return false;
     }
-    /*public void addFragment(Fragment frag, String tag, FragmentAnimation animation,
-    int flags, int containerId) {
-        if (frag != null) {
-            if (!((NavigationFragment) frag).isSingleInstance()
-            || fm.getBackStackEntryCount() == 0) {
-                FragmentTransaction ft = fm.beginTransaction();
-                processClearBackstack(flags);
-                processAddToBackstackFlag(tag, flags, ft);
-                processAnimations(animation, ft);
-                performTransaction(frag, flags, ft, containerId);
-            } else {
-                fm.popBackStack(((NavigationFragment) frag).getFragmentTag(), 0);
-                peek(tag).onFragmentVisible();
+
+    private boolean isInContainer(String tag, int containerId) {
+        Fragment current = stack.findFragmentById(containerId);
+        if (current == null) {
+            return false;
+        }
+        return tag.equals(current.getTag()) || (current instanceof NavigationFragment
+                && tag.equals(((NavigationFragment) current).getFragmentTag()));
+    }
+
+    /**
+     * Brings the instance of a Fragment already in the backstack back to the top, popping every
+     * entry above it in a single operation. The Fragment keeps its state and
+     * {@link NavigationFragment#onFragmentVisible() onFragmentVisible()} is called on it.
+     *
+     * @param tag Tag of the Fragment to bring to front
+     */
+    protected void bringToFront(String tag) {
+        if (!tag.equals(backStack.topTag())) {
+            stack.popBackStackImmediate(tag, 0);
+            restoreShedViewNow();
+        }
+        NavigationFragment fragment = peek();
+        if (fragment != null) {
+            fragment.onFragmentVisible();
+        }
+    }
+
+    /**
+     * Builds and commits the transaction of a navigation which has already been accepted.
+     *
+     * @param frag              Fragment to add
+     * @param tag               Fragment tag
+     * @param animation         Animation of the transaction, null for none
+     * @param flags             Adds flags to manipulate the state of the backstack
+     * @param containerId       Container ID where to insert the fragment
+     * @param allowOptimization Lets the FragmentManager optimize this transaction together with
+     *                          the rest of transactions executed in the same batch
+     */
+    protected void commitTransaction(Fragment frag, String tag, FragmentAnimation animation,
+                                     int flags, int containerId, boolean allowOptimization) {
+        NavigationStack.Transaction ft = stack.beginTransaction();
+        processClearBackstack(flags);
+        processAddToBackstackFlag(tag, flags, ft);
+        processAnimations(animation, ft);
+        boolean postpone = transitionPostponer.shouldPostpone(frag, animation);
+        if (allowOptimization || postpone || (atomicSectionSwitch
+                && (flags & CLEAR_BACKSTACK) == CLEAR_BACKSTACK)) {
+            ft.setAllowOptimization(true);
+        }
+        if (postpone) {
+            transitionPostponer.onCommitted(frag, tag, animation);
+        }
+        performTransaction(frag, flags, ft, containerId);
+        metrics.onCommitted(frag, tag, flags);
+        jankTracker.onCommitted(frag, tag, animation);
+        if (atomicSectionSwitch && !allowOptimization
+                && (flags & CLEAR_BACKSTACK) == CLEAR_BACKSTACK) {
+            // Tear down the old stack and install the new root right away, freeing the old Fragments
+            stack.executePendingTransactions();
+        }
+    }
+
+    /**
+     * Commits the navigations queued during the last frame.
+     * <p/>
+     * Everything queued before the last {@link #CLEAR_BACKSTACK CLEAR_BACKSTACK} navigation is
+     * discarded, as it would be cleared anyway, and repeated consecutive navigations to the same
+     * destination (as in a double tap) are only committed once. The remaining transactions keep their
+     * own backstack entries but are executed in a single optimized batch, so the intermediate
+     * Fragments never get their views created, and only the last one is animated. Navigations that
+     * depend on the backstack left by the previous ones (single instance Fragments and
+     * {@link #DO_NOT_REPLACE_FRAGMENT DO_NOT_REPLACE_FRAGMENT}) execute the batch before being
+     * committed.
+     */
+    protected void flushPendingNavigations() {
+        if (pendingNavigations.isEmpty()) {
+            return;
+        }
+        PendingNavigation[] navigations =
+                pendingNavigations.toArray(new PendingNavigation[pendingNavigations.size()]);
+        pendingNavigations.clear();
+        if (stack.isDestroyed()) {
+            return;
+        }
+
+        boolean traced = NavigationTrace.begin(NavigationTrace.FLUSH);
+        try {
+            flushPendingNavigations(navigations);
+        } finally {
+            NavigationTrace.end(traced);
+        }
+    }
+
+    /**
+     * Commits the navigations queued in this frame right away, so pops and queries issued after
+     * them see the backstack in the order the navigations were requested.
+     */
+    private void flushBeforeReading() {
+        if (!pendingNavigations.isEmpty()) {
+            if (frameScheduler != null) {
+                frameScheduler.cancel();
+            }
+            flushPendingNavigations();
+        }
+    }
+
+    /**
+     * Checks if a queued navigation depends on the backstack left by the previous ones, as the
+     * single instance check or the Fragment covered by a
+     * {@link #DO_NOT_REPLACE_FRAGMENT DO_NOT_REPLACE_FRAGMENT} navigation.
+     */
+    private static boolean readsBackStack(PendingNavigation navigation) {
+        if ((navigation.flags & DO_NOT_REPLACE_FRAGMENT) == DO_NOT_REPLACE_FRAGMENT) {
+            return true;
+        }
+        return navigation.destination != null ? navigation.destination.isSingleInstance()
+                : ((NavigationFragment) navigation.fragment).isSingleInstance();
+    }
+
+    private void flushPendingNavigations(PendingNavigation[] navigations) {
+        int last = navigations.length - 1;
+        int first = 0;
+        for (int i = last; i > 0; i--) {
+            if ((navigations[i].flags & CLEAR_BACKSTACK) == CLEAR_BACKSTACK) {
+                first = i;
+                break;
+            }
+        }
+
+        boolean uncommitted = false;
+        for (int i = first; i <= last; i++) {
+            PendingNavigation navigation = navigations[i];
+            if (i < last && navigation.isSameDestination(navigations[i + 1])) {
+                continue;
+            }
+            if (uncommitted && readsBackStack(navigation)) {
+                // Only this kind of navigation splits the batch, the rest stay optimized together
+                stack.executePendingTransactions();
             }
+            uncommitted = true;
+            FragmentAnimation animation = i == last ? navigation.animation : null;
+            metrics.markStart(navigation.startNanos);
+            boolean traced = NavigationTrace.begin(NavigationTrace.ADD_FRAGMENT, navigation.tag, navigation.flags);
+            try {
+                if (navigation.destination != null) {
+                    commitDestination(navigation.destination, animation, navigation.flags,
+                            navigation.containerId, true);
+                } else {
+                    commitFragment(navigation.fragment, navigation.tag, animation, navigation.flags,
+                            navigation.containerId, true);
+                }
+            } finally {
+                NavigationTrace.end(traced);
+            }
+        }
+        stack.executePendingTransactions();
+    }
+
+    /**
+     * Enables or disables the coalescing of navigations.
+     * <p/>
+     * When enabled, all the navigations issued during the same frame are merged and committed
+     * together on the next frame. See {@link #flushPendingNavigations()}. Pops and backstack
+     * queries commit the pending navigations first, so they always run in the order they were
+     * issued. Disabling it commits the pending navigations right away.
+     *
+     * @param coalesceTransactions TRUE to coalesce transactions per frame, FALSE otherwise
+     */
+    public void setCoalesceTransactions(boolean coalesceTransactions) {
+        this.coalesceTransactions = coalesceTransactions;
+        if (!coalesceTransactions && frameScheduler != null) {
+            frameScheduler.cancel();
+            flushPendingNavigations();
+        }
+    }
+
+    /**
+     * Decides what to do when navigating to a {@link NavigationFragment#isSingleInstance() single
+     * instance} Fragment which is already in the backstack.
+     * <p/>
+     * When enabled, the live instance is brought back to the top with a single pop, keeping its
+     * views and state, instead of discarding the navigation.
+     *
+     * @param bringSingleInstanceToFront TRUE to bring the existing instance to front, FALSE to
+     *                                   discard the navigation
+     */
+    public void setBringSingleInstanceToFront(boolean bringSingleInstanceToFront) {
+        this.bringSingleInstanceToFront = bringSingleInstanceToFront;
+    }
+
+    /**
+     * Hides the Fragment covered by a {@link #DO_NOT_REPLACE_FRAGMENT DO_NOT_REPLACE_FRAGMENT}
+     * navigation in the same transaction that adds the new one.
+     * <p/>
+     * Adding on top keeps every underlying Fragment attached, so all of them are measured, laid
+     * out and drawn on every frame. Hiding them keeps the add-on-top semantics (state, views and
+     * backstack) without drawing the invisible layers. The Fragment is shown again when the
+     * transaction is popped, so it only applies to navigations added to the backstack.
+     *
+     * @param hideCoveredFragments TRUE to hide the covered Fragments, FALSE otherwise
+     */
+    public void setHideCoveredFragments(boolean hideCoveredFragments) {
+        this.hideCoveredFragments = hideCoveredFragments;
+    }
+
+    /**
+     * Keeps at most maxLiveViews Fragments of the backstack with their views inflated when adding
+     * Fragments on top with {@link #DO_NOT_REPLACE_FRAGMENT DO_NOT_REPLACE_FRAGMENT}.
+     * <p/>
+     * Deeper Fragments are detached, keeping the Fragment and its saved view state, and their
+     * views are created again when popping the backstack brings them back within the limit.
+     *
+     * @param maxLiveViews Maximum number of inflated views, top Fragment included, or
+     *                     {@link LiveViewPolicy#UNLIMITED LiveViewPolicy.UNLIMITED}
+     */
+    public void setMaxLiveViews(int maxLiveViews) {
+        liveViewPolicy.setMaxLiveViews(maxLiveViews);
+    }
+
+    /**
+     * Number of times the {@link #setMaxLiveViews(int) live views policy} has detached a
+     * Fragment view.
+     *
+     * @return Eviction count
+     */
+    public int getViewEvictionCount() {
+        return liveViewPolicy.getEvictionCount();
+    }
+
+    /**
+     * Number of times a view detached by the {@link #setMaxLiveViews(int) live views policy} has
+     * been created again.
+     *
+     * @return Re-inflation count
+     */
+    public int getViewReinflationCount() {
+        return liveViewPolicy.getReinflationCount();
+    }
+
+    /**
+     * Number of times a Fragment view has been released on memory pressure, see
+     * {@link #onTrimMemory(int)}. Not included in the {@link #getViewEvictionCount() evictions}.
+     *
+     * @return Shed view count
+     */
+    public int getShedViewCount() {
+        return liveViewPolicy.getShedCount();
+    }
+
+    /**
+     * Switches sections atomically.
+     * <p/>
+     * When enabled, the transactions clearing the backstack allow the FragmentManager to
+     * optimize them, while the rest keep their usual ordering. Clearing the backstack and adding
+     * the new root are then executed together as a single batch: the old Fragments are torn down
+     * without being resumed or animated one by one, only the final state is shown, and the old
+     * Fragments are destroyed right away instead of on a later pass of the main thread.
+     *
+     * @param atomicSectionSwitch TRUE to switch sections atomically, FALSE otherwise
+     */
+    public void setAtomicSectionSwitch(boolean atomicSectionSwitch) {
+        this.atomicSectionSwitch = atomicSectionSwitch;
+    }
+
+    /**
+     * Sets the listener receiving the latency of every navigation. Latencies are also kept in
+     * per tag histograms available through {@link #getNavigationMetrics()}.
+     * <p/>
+     * Navigations are only measured while there is a listener, so there is no overhead otherwise.
+     *
+     * @param listener Listener or null to stop measuring
+     */
+    public void setOnNavigationMetricsListener(OnNavigationMetricsListener listener) {
+        metrics.setListener(listener);
+    }
+
+    public NavigationMetrics getNavigationMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables or disables the tracking of the frames drawn during every animated transition. See
+     * {@link TransitionJankTracker}.
+     *
+     * @param enabled TRUE to track the transitions, FALSE otherwise
+     */
+    public void setTransitionJankTrackingEnabled(boolean enabled) {
+        jankTracker.setEnabled(enabled);
+    }
+
+    /**
+     * Sets the listener receiving the frame statistics of every transition measured while
+     * {@link #setTransitionJankTrackingEnabled(boolean) the tracking is enabled}.
+     *
+     * @param listener Listener or null to remove it
+     */
+    public void setOnTransitionJankListener(OnTransitionJankListener listener) {
+        jankTracker.setListener(listener);
+    }
+
+    public TransitionJankTracker getTransitionJankTracker() {
+        return jankTracker;
+    }
+
+    /**
+     * Enables or disables the detection of leaked Fragments. Meant for debug builds, see
+     * {@link FragmentLeakWatcher}.
+     *
+     * @param enabled TRUE to watch the destroyed Fragments, FALSE otherwise
+     */
+    public void setLeakDetectionEnabled(boolean enabled) {
+        leakWatcher.setEnabled(enabled);
+    }
+
+    public FragmentLeakWatcher getFragmentLeakWatcher() {
+        return leakWatcher;
+    }
+
+    /**
+     * Starts the shared element transition to a
+     * {@link es.babel.cdm.navigation.interfaces.PostponedTransitionFragment PostponedTransitionFragment}
+     * once its content is ready. Calling it after the timeout does nothing.
+     *
+     * @param fragment Destination Fragment
+     */
+    public void startPostponedTransition(Fragment fragment) {
+        transitionPostponer.onReady(fragment);
+    }
+
+    /**
+     * Sets the maximum time a shared element transition waits for its destination before
+     * starting anyway. See {@link TransitionPostponer}.
+     *
+     * @param timeoutMs Timeout in milliseconds
+     */
+    public void setPostponedTransitionTimeout(long timeoutMs) {
+        transitionPostponer.setTimeoutMs(timeoutMs);
+    }
+
+    public void setOnPostponedTransitionListener(OnPostponedTransitionListener listener) {
+        transitionPostponer.setListener(listener);
+    }
+
+    public TransitionPostponer getTransitionPostponer() {
+        return transitionPostponer;
+    }
+
+    private FrameScheduler getFrameScheduler() {
+        if (frameScheduler == null) {
+            frameScheduler = FrameScheduler.create(new Runnable() {
+                @Override
+                public void run() {
+                    flushPendingNavigations();
+                }
+            });
         }
-    }*/
+        return frameScheduler;
+    }
 
     /**
      * Returns the first fragment in the stack with the tag "tag".
@@ -165,23 +847,33 @@ public class NavigationManager {
      * @return First fragment in the stack with the name Tag
      */
     protected NavigationFragment peek(String tag) {
-        return (NavigationFragment) fm.findFragmentByTag(tag);
+        int position = backStack.positionOf(tag);
+        if (position >= 0) {
+            return (NavigationFragment) backStack.fragmentAt(position);
+        }
+        return (NavigationFragment) stack.findFragmentByTag(tag);
     }
 
     /**
      * Process Clear backstack flag.
      * <p/>
      * NavigationManager will clear the back stack before trying to add the next Fragment if
-     * {@link #CLEAR_BACKSTACK CLEAR_BACKSTACK} flag is found
+     * {@link #CLEAR_BACKSTACK CLEAR_BACKSTACK} flag is found. The pop is not executed immediately,
+     * so it runs in the same batch as the transaction adding the next Fragment. See
+     * {@link #setAtomicSectionSwitch(boolean)}.
      *
      * @param flags Added flags to the Fragment configuration
      */
     protected void processClearBackstack(int flags) {
         if ((flags & CLEAR_BACKSTACK) == CLEAR_BACKSTACK) {
+            lazyBackStack = null;
+            boolean traced = NavigationTrace.begin(NavigationTrace.CLEAR_BACKSTACK, backStack.topTag(), flags);
             try {
-                fm.popBackStack(null, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+                stack.popBackStack(null, FragmentManager.POP_BACK_STACK_INCLUSIVE);
             } catch (IllegalStateException exception) {
                 exception.printStackTrace();
+            } finally {
+                NavigationTrace.end(traced);
             }
         }
     }
@@ -196,7 +888,26 @@ public class NavigationManager {
      * @param flags Added flags to the Fragment configuration
      * @param ft    Transaction to add to backstack from
      */
+    protected void processAddToBackstackFlag(String title, int flags, NavigationStack.Transaction ft) {
+        FragmentTransaction fragmentTransaction = FragmentManagerStack.unwrap(ft);
+        if (fragmentTransaction != null) {
+            processAddToBackstackFlag(title, flags, fragmentTransaction);
+        } else {
+            applyAddToBackstackFlag(title, flags, ft);
+        }
+    }
+
+    /**
+     * @deprecated Override {@link #processAddToBackstackFlag(String, int,
+     * es.babel.cdm.navigation.interfaces.NavigationStack.Transaction)} instead. Only called when
+     * running on a FragmentManager.
+     */
+    @Deprecated
     protected void processAddToBackstackFlag(String title, int flags, FragmentTransaction ft) {
+        applyAddToBackstackFlag(title, flags, wrap(ft));
+    }
+
+    private void applyAddToBackstackFlag(String title, int flags, NavigationStack.Transaction ft) {
         if ((flags & DO_NOT_ADD_TO_BACKSTACK) != DO_NOT_ADD_TO_BACKSTACK) {
             ft.addToBackStack(title);
         }
@@ -208,7 +919,26 @@ public class NavigationManager {
      * @param animation Animation object to process
      * @param ft        Fragment transaction to add to the transition
      */
+    protected void processAnimations(FragmentAnimation animation, NavigationStack.Transaction ft) {
+        FragmentTransaction fragmentTransaction = FragmentManagerStack.unwrap(ft);
+        if (fragmentTransaction != null) {
+            processAnimations(animation, fragmentTransaction);
+        } else {
+            applyAnimations(animation, ft);
+        }
+    }
+
+    /**
+     * @deprecated Override {@link #processAnimations(FragmentAnimation,
+     * es.babel.cdm.navigation.interfaces.NavigationStack.Transaction)} instead. Only called when
+     * running on a FragmentManager.
+     */
+    @Deprecated
     protected void processAnimations(FragmentAnimation animation, FragmentTransaction ft) {
+        applyAnimations(animation, wrap(ft));
+    }
+
+    private void applyAnimations(FragmentAnimation animation, NavigationStack.Transaction ft) {
         if (animation != null) {
             if (animation.isCompletedAnimation()) {
                 ft.setCustomAnimations(animation.getEnterAnim(), animation.getExitAnim(),
@@ -216,8 +946,8 @@ public class NavigationManager {
             } else {
                 ft.setCustomAnimations(animation.getEnterAnim(), animation.getExitAnim());
             }
-            if (Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP) {
-                for (LollipopAnim sharedElement : animation.getSharedViews()) {
+            if (animation.hasSharedViews() && Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP) {
+                for (LollipopAnim sharedElement : animation.sharedViews) {
                     ft.addSharedElement(sharedElement.view, sharedElement.name);
                 }
             }
@@ -228,19 +958,57 @@ public class NavigationManager {
      * Configures the way to add the Fragment into the transaction. It can vary from
      * adding a new fragment, to using a previous instance and refresh it, or replacing
      * the last one.
+     * <p/>
+     * When adding on top of the current Fragment and {@link #setHideCoveredFragments(boolean)
+     * hiding covered fragments} is enabled, the covered Fragment is hidden in the same
+     * transaction, so it is not drawn anymore. Popping the transaction shows it again. The
+     * {@link #setMaxLiveViews(int) live views policy} may also detach a deeper Fragment.
      *
      * @param frag        Fragment to add
      * @param flags       Added flags to the Fragment configuration
      * @param ft          Transaction to add the fragment
      * @param containerId Target container ID
      */
+    protected void configureAdditionMode(Fragment frag, int flags, NavigationStack.Transaction ft,
+                                         int containerId) {
+        FragmentTransaction fragmentTransaction = FragmentManagerStack.unwrap(ft);
+        if (fragmentTransaction != null) {
+            configureAdditionMode(frag, flags, fragmentTransaction, containerId);
+        } else {
+            applyAdditionMode(frag, flags, ft, containerId);
+        }
+    }
+
+    /**
+     * @deprecated Override {@link #configureAdditionMode(Fragment, int,
+     * es.babel.cdm.navigation.interfaces.NavigationStack.Transaction, int)} instead. Only called
+     * when running on a FragmentManager.
+     */
+    @Deprecated
     protected void configureAdditionMode(Fragment frag, int flags, FragmentTransaction ft,
                                          int containerId) {
+        applyAdditionMode(frag, flags, wrap(ft), containerId);
+    }
+
+    private void applyAdditionMode(Fragment frag, int flags, NavigationStack.Transaction ft,
+                                   int containerId) {
         if ((flags & DO_NOT_REPLACE_FRAGMENT) != DO_NOT_REPLACE_FRAGMENT) {
             ft.replace(containerId, frag, ((NavigationFragment) frag).getFragmentTag());
         } else {
+            if ((flags & DO_NOT_ADD_TO_BACKSTACK) != DO_NOT_ADD_TO_BACKSTACK) {
+                if (hideCoveredFragments) {
+                    Fragment covered = stack.findFragmentById(containerId);
+                    if (covered != null && covered != frag) {
+                        ft.hide(covered);
+                    }
+                }
+                liveViewPolicy.onFragmentCovered(backStack, ft);
+            }
             ft.add(containerId, frag, ((NavigationFragment) frag).getFragmentTag());
-            peek().onFragmentNotVisible();
+            NavigationFragment current = peek();
+            if (current != null) {
+                current.onFragmentNotVisible();
+            }
         }
     }
 
@@ -252,10 +1020,43 @@ public class NavigationManager {
      * @param ft          Transaction to add the fragment
      * @param containerId Target containerID
      */
+    protected void performTransaction(Fragment frag, int flags, NavigationStack.Transaction ft,
+                                      int containerId) {
+        FragmentTransaction fragmentTransaction = FragmentManagerStack.unwrap(ft);
+        if (fragmentTransaction != null) {
+            performTransaction(frag, flags, fragmentTransaction, containerId);
+        } else {
+            applyTransaction(frag, flags, ft, containerId);
+        }
+    }
+
+    /**
+     * @deprecated Override {@link #performTransaction(Fragment, int,
+     * es.babel.cdm.navigation.interfaces.NavigationStack.Transaction, int)} instead. Only called
+     * when running on a FragmentManager.
+     */
+    @Deprecated
     protected void performTransaction(Fragment frag, int flags, FragmentTransaction ft,
                                       int containerId) {
-        configureAdditionMode(frag, flags, ft, containerId);
-        ft.commitAllowingStateLoss();
+        applyTransaction(frag, flags, wrap(ft), containerId);
+    }
+
+    private void applyTransaction(Fragment frag, int flags, NavigationStack.Transaction ft,
+                                  int containerId) {
+        boolean traced = NavigationTrace.begin(NavigationTrace.COMMIT, frag, flags);
+        try {
+            configureAdditionMode(frag, flags, ft, containerId);
+            ft.commitAllowingStateLoss();
+        } finally {
+            NavigationTrace.end(traced);
+        }
+    }
+
+    /**
+     * Wraps a FragmentTransaction received by one of the deprecated hooks.
+     */
+    private NavigationStack.Transaction wrap(FragmentTransaction ft) {
+        return ((FragmentManagerStack) stack).wrap(ft);
     }
 
     /**
@@ -265,24 +1066,17 @@ public class NavigationManager {
      * @throws java.lang.NullPointerException if there is no Fragment Added
      */
     protected NavigationFragment peek() {
-        if (fm.getBackStackEntryCount() > 0) {
-            return ((NavigationFragment) fm.findFragmentByTag(
-                    fm.getBackStackEntryAt(fm.getBackStackEntryCount() - 1).getName()));
-        } else {
-            return null;
-        }
+        return (NavigationFragment) backStack.top();
     }
 
+    /**
+     * Returns the NavigationFragment currently on screen.
+     *
+     * @return Visible NavigationFragment or null if there is none
+     */
     protected NavigationFragment getLastFragmentOfStack() {
-        if (fm.getFragments() != null) {
-            for (int i = 0; i < fm.getFragments().size(); i++) {
-                Fragment frag = fm.getFragments().get(i);
-                if (frag instanceof NavigationFragment && frag.isVisible()) {
-                    return (NavigationFragment) frag;
-                }
-            }
-        }
-        return null;
+        flushBeforeReading();
+        return visibleFragment.getCurrent();
     }
 
     /**
@@ -306,34 +1100,50 @@ public class NavigationManager {
      * @param containerId Target container ID
      */
     public void popBackStack(int containerId) {
-        NavigationFragment currentFragment = (NavigationFragment) fm.findFragmentById(containerId);
+        flushBeforeReading();
+        boolean traced = NavigationTrace.begin(NavigationTrace.POP_BACKSTACK, backStack.topTag(), 0);
+        try {
+            popBackStackInternal(containerId);
+        } finally {
+            NavigationTrace.end(traced);
+        }
+    }
+
+    private void popBackStackInternal(int containerId) {
+        NavigationFragment currentFragment = (NavigationFragment) stack.findFragmentById(containerId);
 
-        if (fm.getBackStackEntryCount() <= 0) {
-            currentFragment.onBackPressed();
+        if (backStack.size() <= 0) {
+            if (lazyBackStack != null
+                    && (currentFragment == null || !currentFragment.customizedOnBackPressed())) {
+                popLazyBackStack(containerId, 1);
+            } else {
+                currentFragment.onBackPressed();
+            }
             return;
         }
 
         if (currentFragment != null) {
             if (!currentFragment.customizedOnBackPressed()) {
-                FragmentManager.BackStackEntry backEntry =
-                        fm.getBackStackEntryAt(fm.getBackStackEntryCount() - 1);
-                NavigationFragment lastFragment = (NavigationFragment)
-                        fm.findFragmentByTag(backEntry.getName());
+                NavigationFragment lastFragment = peek();
                 if (currentFragment.getFragmentTag().equals(lastFragment.getFragmentTag())) {
-                    if (currentFragment.onBackPressedTarget() == null
-                            || currentFragment.onBackPressedTarget().isEmpty()) {
-                        fm.popBackStackImmediate();
-                        if (fm.getBackStackEntryCount() >= 1 && peek() != null) {
-                            peek().onFragmentVisible();
+                    String backTarget = currentFragment.onBackPressedTarget();
+                    if (backTarget == null || backTarget.isEmpty()) {
+                        stack.popBackStackImmediate();
+                        restoreShedViewNow();
+                        NavigationFragment destination = peek();
+                        if (destination != null) {
+                            destination.onFragmentVisible();
                         }
                     } else {
                         //Clean all until containerId
-                        popBackStack(currentFragment.onBackPressedTarget(), 0);
+                        popBackStack(backTarget, 0);
                     }
                 } else {
-                    FragmentTransaction fragmentTransaction = fm.beginTransaction();
-                    fragmentTransaction.setCustomAnimations(animation.getPushInAnim(),
-                            animation.getPopOutAnim());
+                    NavigationStack.Transaction fragmentTransaction = stack.beginTransaction();
+                    if (animation != null) {
+                        fragmentTransaction.setCustomAnimations(animation.getPushInAnim(),
+                                animation.getPopOutAnim());
+                    }
                     fragmentTransaction.remove((Fragment) currentFragment)
                             .add((Fragment) lastFragment, lastFragment.getFragmentTag())
                             .commit();
@@ -346,6 +1156,99 @@ public class NavigationManager {
     }
 
 
+    /**
+     * Pops several levels of the backstack at once.
+     * <p/>
+     * A single level behaves exactly as {@link #popBackStack(int) popBackStack(int)}. Otherwise the
+     * whole range is popped with one FragmentManager operation, so only one animation is run and
+     * {@link NavigationFragment#onFragmentVisible() onFragmentVisible()} is only called on the final
+     * destination instead of on every intermediate Fragment.
+     * <p/>
+     * If any of the Fragments to pop has a
+     * {@link NavigationFragment#customizedOnBackPressed() customized back} or a
+     * {@link NavigationFragment#onBackPressedTarget() back target}, the levels are popped one by one
+     * through {@link #popBackStack(int) popBackStack(int)} instead, so every one of them handles its
+     * own back as before. The same happens when the Fragment on screen is not the top of the
+     * backstack, as one added with {@link #DO_NOT_ADD_TO_BACKSTACK DO_NOT_ADD_TO_BACKSTACK}, which
+     * only {@link #popBackStack(int) popBackStack(int)} removes.
+     *
+     * @param containerId Target container ID
+     * @param levels      Number of backstack entries to pop
+     */
+    public void popBackStackLevels(int containerId, int levels) {
+        if (levels <= 0) {
+            return;
+        }
+        flushBeforeReading();
+        if (levels == 1) {
+            popBackStack(containerId);
+            return;
+        }
+
+        int count = backStack.size();
+        if (count <= 0 && lazyBackStack == null) {
+            return;
+        }
+        if (handlesOwnBack(containerId, levels)
+                || (count > 0 && stack.findFragmentById(containerId) != backStack.top())) {
+            for (int i = 0; i < levels; i++) {
+                popBackStack(containerId);
+            }
+            return;
+        }
+
+        boolean traced = NavigationTrace.begin(NavigationTrace.POP_BACKSTACK, backStack.topTag(),
+                FragmentManager.POP_BACK_STACK_INCLUSIVE);
+        try {
+            if (count > 0) {
+                stack.popBackStackImmediate(backStack.idAt(Math.max(count - levels, 0)),
+                        FragmentManager.POP_BACK_STACK_INCLUSIVE);
+                restoreShedViewNow();
+            }
+            if (levels > count && lazyBackStack != null) {
+                popLazyBackStack(containerId, levels - count);
+            }
+        } finally {
+            NavigationTrace.end(traced);
+        }
+
+        NavigationFragment destination = peek();
+        if (destination != null) {
+            destination.onFragmentVisible();
+        }
+    }
+
+    /**
+     * Checks if the Fragment on screen or any of the backstack Fragments popped by a multi-level pop
+     * handles the back itself.
+     *
+     * @param containerId Target container ID
+     * @param levels      Number of backstack entries to pop
+     * @return TRUE if the levels have to be popped one by one, FALSE otherwise
+     */
+    private boolean handlesOwnBack(int containerId, int levels) {
+        if (handlesOwnBack(stack.findFragmentById(containerId))) {
+            return true;
+        }
+        int count = backStack.size();
+        for (int i = Math.max(count - levels, 0); i < count; i++) {
+            if (handlesOwnBack(backStack.fragmentAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean handlesOwnBack(Fragment fragment) {
+        if (!(fragment instanceof NavigationFragment)) {
+            return false;
+        }
+        NavigationFragment navigationFragment = (NavigationFragment) fragment;
+        String backTarget = navigationFragment.onBackPressedTarget();
+        return navigationFragment.customizedOnBackPressed()
+                || (backTarget != null && !backTarget.isEmpty());
+    }
+
     /**
      * Pops the Fragment with the tag, applying the necessary flags
      *
@@ -353,7 +1256,8 @@ public class NavigationManager {
      * @param flags Flags to apply for the
      */
     public void popBackStack(String tag, int flags) {
-        fm.popBackStack(tag, flags);
+        flushBeforeReading();
+        stack.popBackStack(tag, flags);
     }
 
     /**
@@ -362,7 +1266,177 @@ public class NavigationManager {
      * @return Backstack Entry Count.
      */
     public int getBackStackEntryCount() {
-        return fm.getBackStackEntryCount();
+        flushBeforeReading();
+        return backStack.size() + (lazyBackStack != null ? lazyBackStack.size() : 0);
+    }
+
+    /**
+     * Takes a compact copy of the navigation stack of a container, to be kept by a
+     * {@link BackStackStore BackStackStore} instead of the saved instance state.
+     * <p/>
+     * Every backstack Fragment is copied, plus the Fragment on screen when it is not in the
+     * backstack. Only the class, the tag, the arguments and the saved instance state of the
+     * Fragments are kept, so it has to be taken before the state of the FragmentManager is saved.
+     *
+     * @param containerId Container of the navigation
+     * @return Snapshot of the stack
+     */
+    public BackStackSnapshot snapshot(int containerId) {
+        ArrayList<BackStackSnapshot.Entry> entries =
+                new ArrayList<BackStackSnapshot.Entry>(getBackStackEntryCount() + 1);
+        Fragment last = null;
+        if (lazyBackStack != null) {
+            lazyBackStack.copyTo(entries);
+            last = lazyBackStack.getBottom();
+            entries.add(snapshotEntry(lazyBackStack.tagOfBottom(), last,
+                    lazyBackStack.isBottomInBackStack()));
+        }
+        for (int i = 0; i < backStack.size(); i++) {
+            Fragment fragment = backStack.fragmentAt(i);
+            if (fragment != null) {
+                entries.add(snapshotEntry(backStack.tagAt(i), fragment, true));
+                last = fragment;
+            }
+        }
+        Fragment onScreen = stack.findFragmentById(containerId);
+        if (onScreen != null && onScreen != last) {
+            String tag = onScreen instanceof NavigationFragment
+                    ? ((NavigationFragment) onScreen).getFragmentTag() : onScreen.getTag();
+            entries.add(snapshotEntry(tag, onScreen, false));
+        }
+        return new BackStackSnapshot(containerId, entries, getClass().getClassLoader());
+    }
+
+    /**
+     * Creates again the navigation stack of a {@link #snapshot(int) snapshot}, with no animation.
+     * <p/>
+     * The transactions are executed in a single optimized batch, so only the Fragment on top gets
+     * its view created. If a Fragment cannot be created the entries above it are discarded.
+     *
+     * @param context  Context used to create the Fragments
+     * @param snapshot Snapshot to restore
+     */
+    public void restore(Context context, BackStackSnapshot snapshot) {
+        if (stack.isDestroyed()) {
+            return;
+        }
+        lazyBackStack = null;
+        initialFragmentInstalled = snapshot.size() > 0 && !snapshot.isInBackStack(0);
+        int containerId = snapshot.getContainerId();
+        for (int i = 0; i < snapshot.size(); i++) {
+            Fragment fragment;
+            try {
+                fragment = snapshot.instantiate(context, i);
+            } catch (Fragment.InstantiationException e) {
+                Log.e("NAVIGATION FRAGMENT", "The fragment with tag --'" + snapshot.getTag(i)
+                        + "'-- could not be restored", e);
+                break;
+            }
+            String tag = fragment instanceof NavigationFragment
+                    ? ((NavigationFragment) fragment).getFragmentTag() : snapshot.getTag(i);
+            NavigationStack.Transaction ft = stack.beginTransaction();
+            ft.replace(containerId, fragment, tag);
+            if (snapshot.isInBackStack(i)) {
+                ft.addToBackStack(snapshot.getTag(i));
+            }
+            ft.setAllowOptimization(true);
+            ft.commitAllowingStateLoss();
+        }
+        stack.executePendingTransactions();
+    }
+
+    /**
+     * Creates again the navigation stack of a {@link #snapshot(int) snapshot} creating only the
+     * Fragment on top, with no animation. See {@link LazyBackStack}.
+     * <p/>
+     * The rest of Fragments are created when navigating up reaches them, through
+     * {@link #popBackStack(int)} or {@link #popBackStackLevels(int, int)}. Jumping to a tag with
+     * {@link #popBackStack(String, int)} only reaches the Fragments already created.
+     *
+     * @param context  Context used to create the Fragments, only its application context is kept
+     * @param snapshot Snapshot to restore
+     */
+    public void restoreLazily(Context context, BackStackSnapshot snapshot) {
+        if (snapshot.size() <= 1) {
+            restore(context, snapshot);
+            return;
+        }
+        if (stack.isDestroyed()) {
+            return;
+        }
+        LazyBackStack lazy = new LazyBackStack(context, snapshot);
+        Fragment top = lazy.createBottom();
+        if (top == null) {
+            return;
+        }
+        lazyBackStack = lazy;
+        initialFragmentInstalled = false;
+        stack.beginTransaction()
+                .replace(snapshot.getContainerId(), top, lazy.tagOfBottom())
+                .commitAllowingStateLoss();
+        stack.executePendingTransactions();
+    }
+
+    /**
+     * Navigates up from the bottom Fragment of a lazy restore, creating the Fragment reached.
+     *
+     * @param containerId Target container ID
+     * @param levels      Number of lazy entries to pop
+     */
+    private void popLazyBackStack(int containerId, int levels) {
+        Fragment current = stack.findFragmentById(containerId);
+        Fragment destination = lazyBackStack.drop(levels);
+        String tag = destination != null ? lazyBackStack.tagOfBottom() : null;
+        if (lazyBackStack.size() == 0) {
+            lazyBackStack = null;
+        }
+        if (destination == null && current == null) {
+            return;
+        }
+
+        NavigationStack.Transaction ft = stack.beginTransaction();
+        if (animation != null) {
+            ft.setCustomAnimations(animation.getPushInAnim(), animation.getPopOutAnim());
+        }
+        if (destination != null) {
+            ft.replace(containerId, destination, tag);
+        } else {
+            ft.remove(current);
+        }
+        ft.commitAllowingStateLoss();
+        stack.executePendingTransactions();
+    }
+
+    /**
+     * Removes every Fragment of a container and the whole backstack, once they have been copied
+     * by {@link #snapshot(int)}, so the FragmentManager has no navigation state left to save. Has
+     * to be called before the state of the FragmentManager is saved.
+     *
+     * @param containerId Container of the navigation
+     */
+    public void clearContainer(int containerId) {
+        if (stack.isDestroyed()) {
+            return;
+        }
+        lazyBackStack = null;
+        initialFragmentInstalled = false;
+        stack.executePendingTransactions();
+        if (stack.getBackStackEntryCount() > 0) {
+            stack.popBackStackImmediate(null, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+        }
+        Fragment fragment;
+        while ((fragment = stack.findFragmentById(containerId)) != null) {
+            stack.beginTransaction().remove(fragment).commitNowAllowingStateLoss();
+        }
+    }
+
+    private BackStackSnapshot.Entry snapshotEntry(String tag, Fragment fragment,
+                                                  boolean inBackStack) {
+        // The snapshot is written in the background, marshall everything while on the main thread
+        return new BackStackSnapshot.Entry(tag, fragment.getClass().getName(),
+                BackStackSnapshot.marshall(fragment.getArguments()),
+                BackStackSnapshot.marshall(stack.saveFragmentInstanceState(fragment)),
+                inBackStack);
     }
 
     /**
@@ -372,11 +1446,141 @@ public class NavigationManager {
      * This method is here instead of the
      * NavigationManager because I did not want to enforce any termination conditions itself.
      * However this is a good start to extend your own Activity Finishes.
+     * <p/>
+     * The root of the navigation is the first backstack entry, or the Fragment installed by
+     * {@link #setInitialFragment(Fragment, String, int) setInitialFragment}, which has none.
      *
      * @return TRUE if the activity is finishable, FALSE otherwise
      */
     public boolean canActivityFinish() {
-        return getBackStackEntryCount() <= 1 || peek() == null || peek().isEntryFragment();
+        flushBeforeReading();
+        if (getBackStackEntryCount() <= (initialFragmentInstalled ? 0 : 1)) {
+            return true;
+        }
+        NavigationFragment top = backStack.size() > 0 || lazyBackStack == null
+                ? peek() : (NavigationFragment) lazyBackStack.getBottom();
+        return top == null || top.isEntryFragment();
+    }
+
+    public boolean isInitialFragmentInstalled() {
+        return initialFragmentInstalled;
+    }
+
+    /**
+     * Tells the NavigationManager that the bottom Fragment of the container has no backstack
+     * entry, as when the FragmentManager restores the Fragment installed by
+     * {@link #setInitialFragment(Fragment, String, int) setInitialFragment} after the process is
+     * recreated.
+     *
+     * @param installed TRUE if the bottom Fragment has no backstack entry
+     */
+    public void setInitialFragmentInstalled(boolean installed) {
+        this.initialFragmentInstalled = installed;
+    }
+
+    /**
+     * Lets {@link #onTrimMemory(int)} release the views of the off-screen Fragments of the
+     * backstack. Disabled by default, as their views and transitions have to be created again when
+     * navigating back to them.
+     *
+     * @param shedViews TRUE to release the views on memory pressure, FALSE otherwise
+     */
+    public void setShedViewsOnTrimMemory(boolean shedViews) {
+        this.shedViewsOnTrimMemory = shedViews;
+    }
+
+    /**
+     * Releases memory in steps depending on the trim level received by the Activity:
+     * <ul>
+     * <li>Every Fragment in the backstack implementing {@link TrimMemoryAwareFragment} is
+     * notified to drop its own heavy resources</li>
+     * <li>On {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW TRIM_MEMORY_RUNNING_LOW} the
+     * views of all the off-screen Fragments but the one below the current Fragment are
+     * released</li>
+     * <li>On {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL TRIM_MEMORY_RUNNING_CRITICAL}
+     * the views of all the off-screen Fragments are released</li>
+     * <li>{@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN TRIM_MEMORY_UI_HIDDEN} and
+     * {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND TRIM_MEMORY_BACKGROUND} are received
+     * every time the app goes to background, so the views are kept for when the user comes
+     * back</li>
+     * <li>From {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE TRIM_MEMORY_MODERATE} the process
+     * is about to be killed in background, so the views of all the off-screen Fragments are
+     * released</li>
+     * </ul>
+     * The views are only released when {@link #setShedViewsOnTrimMemory(boolean) enabled}, and
+     * they are created again when the Fragment gets back to the top of the backstack.
+     *
+     * @param level Trim level as received by {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void onTrimMemory(int level) {
+        if (stack == null || stack.isDestroyed()) {
+            return;
+        }
+        notifyTrimMemory(level);
+        if (!shedViewsOnTrimMemory) {
+            return;
+        }
+
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            shedOffScreenViews(2);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            shedOffScreenViews(1);
+        }
+    }
+
+    /**
+     * Notifies every {@link TrimMemoryAwareFragment} in the backstack, and the current one if it
+     * is not in the backstack, about the memory trim level.
+     *
+     * @param level Trim level
+     */
+    protected void notifyTrimMemory(int level) {
+        for (int i = backStack.size() - 1; i >= 0; i--) {
+            Fragment fragment = backStack.fragmentAt(i);
+            if (fragment instanceof TrimMemoryAwareFragment) {
+                ((TrimMemoryAwareFragment) fragment).onTrimMemory(level);
+            }
+        }
+        NavigationFragment current = getLastFragmentOfStack();
+        if (current instanceof TrimMemoryAwareFragment
+                && !backStack.contains(current.getFragmentTag())) {
+            ((TrimMemoryAwareFragment) current).onTrimMemory(level);
+        }
+    }
+
+    /**
+     * Releases the views of the Fragments of the backstack, keeping the topmost ones.
+     *
+     * @param keep Number of Fragments from the top of the backstack keeping their views
+     */
+    protected void shedOffScreenViews(int keep) {
+        Fragment current = (Fragment) getLastFragmentOfStack();
+        NavigationStack.Transaction ft = null;
+        for (int i = backStack.size() - 1 - keep; i >= 0; i--) {
+            Fragment fragment = backStack.fragmentAt(i);
+            if (fragment == current) {
+                continue;
+            }
+            if (ft == null) {
+                ft = stack.beginTransaction();
+            }
+            liveViewPolicy.shed(ft, fragment);
+        }
+        if (ft != null) {
+            ft.commitAllowingStateLoss();
+        }
+    }
+
+    /**
+     * Executes right away the transaction attaching again a Fragment whose view was shed, if
+     * popping the backstack has brought one to the top.
+     */
+    private void restoreShedViewNow() {
+        if (shedViewRestorePending) {
+            shedViewRestorePending = false;
+            stack.executePendingTransactions();
+        }
     }
 
     public void setAnimation(FragmentAnimation animation) {
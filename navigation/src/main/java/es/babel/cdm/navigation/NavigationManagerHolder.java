@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+
+/**
+ * Headless Fragment retained across configuration changes that keeps the
+ * {@link NavigationManager NavigationManager} of a {@link NavigationActivity NavigationActivity},
+ * with its metrics and statistics, so the Activity does not need its non configuration instance.
+ * <p/>
+ * After the process is recreated the FragmentManager restores it without any NavigationManager.
+ */
+public class NavigationManagerHolder extends Fragment {
+
+    static final String TAG = "navigation:manager";
+
+    private NavigationManager navigationManager;
+
+    public NavigationManagerHolder() {
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+    }
+
+    public NavigationManager getNavigationManager() {
+        return navigationManager;
+    }
+
+    void setNavigationManager(NavigationManager navigationManager) {
+        this.navigationManager = navigationManager;
+    }
+
+    /**
+     * Finds the holder of a FragmentManager, adding it if there is none yet. Has to be called
+     * before the state of the FragmentManager is saved.
+     *
+     * @param fm FragmentManager of the Activity
+     * @return Holder of the FragmentManager
+     */
+    static NavigationManagerHolder of(FragmentManager fm) {
+        NavigationManagerHolder holder = (NavigationManagerHolder) fm.findFragmentByTag(TAG);
+        if (holder == null) {
+            holder = new NavigationManagerHolder();
+            fm.beginTransaction().add(holder, TAG).commitNow();
+        }
+        return holder;
+    }
+}
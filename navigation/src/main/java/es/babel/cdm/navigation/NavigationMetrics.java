@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.animation.Animation;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+
+import es.babel.cdm.navigation.interfaces.OnNavigationMetricsListener;
+
+/**
+ * Measures how long navigations take, from the moment they are requested until the end of their
+ * transition, through several phases:
+ * <ul>
+ * <li>{@link #PHASE_COMMIT Commit} of the transaction</li>
+ * <li>{@link #PHASE_VIEW_CREATED Creation} of the destination view</li>
+ * <li>{@link #PHASE_FIRST_FRAME First frame} drawn with the destination</li>
+ * <li>{@link #PHASE_ANIMATION_END End} of the transition animation</li>
+ * </ul>
+ * Latencies are kept in per tag and per flag combination {@link LatencyHistogram histograms} and
+ * reported to the {@link OnNavigationMetricsListener listener}.
+ * <p/>
+ * Measuring is only enabled while there is a listener. Otherwise every hook returns right away
+ * without allocating.
+ */
+public class NavigationMetrics extends FragmentManager.FragmentLifecycleCallbacks {
+
+    public static final int PHASE_COMMIT = 0;
+    public static final int PHASE_VIEW_CREATED = 1;
+    public static final int PHASE_FIRST_FRAME = 2;
+    public static final int PHASE_ANIMATION_END = 3;
+
+    /**
+     * Number of measured phases
+     */
+    public static final int PHASE_COUNT = 4;
+
+    /**
+     * Number of combinations of the {@link NavigationManager NavigationManager} flags
+     */
+    private static final int FLAG_COMBINATIONS = 8;
+
+    private OnNavigationMetricsListener listener;
+
+    private final HashMap<String, LatencyHistogram[]> histograms =
+            new HashMap<String, LatencyHistogram[]>();
+    /**
+     * Navigations waiting for their next phase. Weak keys, so a destination which never gets added
+     * does not outlive its navigation
+     */
+    private final WeakHashMap<Fragment, Measurement> inFlight =
+            new WeakHashMap<Fragment, Measurement>();
+
+    private long startNanos = 0;
+
+    /**
+     * Sets the listener receiving the measured navigations. Setting a null listener disables the
+     * measuring.
+     *
+     * @param listener Listener or null
+     */
+    public void setListener(OnNavigationMetricsListener listener) {
+        this.listener = listener;
+        if (listener == null) {
+            inFlight.clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return listener != null;
+    }
+
+    /**
+     * Current time for the start of a navigation.
+     *
+     * @return Current time in nanoseconds, or 0 when measuring is disabled
+     */
+    public long now() {
+        return listener != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Sets the time when the next committed navigation was requested.
+     *
+     * @param startNanos Start time, as returned by {@link #now()}
+     */
+    public void markStart(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Records the commit of a navigation and starts measuring the rest of its phases. Previous
+     * navigations whose view has not been created yet are superseded by this one, and discarded
+     * without being reported.
+     *
+     * @param fragment Destination Fragment
+     * @param tag      Destination tag
+     * @param flags    Flags of the navigation
+     */
+    public void onCommitted(Fragment fragment, String tag, int flags) {
+        if (listener == null || startNanos == 0) {
+            return;
+        }
+        discardSuperseded();
+        Measurement measurement = new Measurement(fragment, tag, flags, startNanos);
+        startNanos = 0;
+        measurement.record(PHASE_COMMIT);
+        inFlight.put(fragment, measurement);
+    }
+
+    private void discardSuperseded() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        Iterator<Measurement> iterator = inFlight.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().phases[PHASE_VIEW_CREATED] < 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the histogram of a phase.
+     *
+     * @param tag   Destination tag
+     * @param flags Flags of the navigation
+     * @param phase One of the PHASE constants
+     * @return Histogram or null if no navigation has been measured for that tag and flags
+     */
+    public LatencyHistogram getHistogram(String tag, int flags, int phase) {
+        LatencyHistogram[] tagHistograms = histograms.get(tag);
+        return tagHistograms != null
+                ? tagHistograms[(flags % FLAG_COMBINATIONS) * PHASE_COUNT + phase] : null;
+    }
+
+    /**
+     * Discards every recorded latency.
+     */
+    public void reset() {
+        histograms.clear();
+    }
+
+    @Override
+    public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v,
+                                      Bundle savedInstanceState) {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        Measurement measurement = inFlight.get(f);
+        if (measurement != null) {
+            measurement.record(PHASE_VIEW_CREATED);
+            measurement.watch(v);
+        }
+    }
+
+    @Override
+    public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        Measurement measurement = inFlight.get(f);
+        if (measurement != null) {
+            measurement.finish();
+        }
+    }
+
+    @Override
+    public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        onFragmentViewDestroyed(fm, f);
+    }
+
+    private void record(String tag, int flags, int phase, long nanos) {
+        LatencyHistogram[] tagHistograms = histograms.get(tag);
+        if (tagHistograms == null) {
+            tagHistograms = new LatencyHistogram[FLAG_COMBINATIONS * PHASE_COUNT];
+            histograms.put(tag, tagHistograms);
+        }
+        int index = (flags % FLAG_COMBINATIONS) * PHASE_COUNT + phase;
+        if (tagHistograms[index] == null) {
+            tagHistograms[index] = new LatencyHistogram();
+        }
+        tagHistograms[index].record(nanos);
+    }
+
+    /**
+     * Phases of a navigation in flight
+     */
+    private class Measurement implements ViewTreeObserver.OnPreDrawListener, Runnable {
+
+        private final WeakReference<Fragment> fragment;
+        private final String tag;
+        private final int flags;
+        private final long startNanos;
+        private final long[] phases = {-1, -1, -1, -1};
+
+        private View view;
+        private FrameScheduler animationWatcher;
+
+        Measurement(Fragment fragment, String tag, int flags, long startNanos) {
+            this.fragment = new WeakReference<Fragment>(fragment);
+            this.tag = tag;
+            this.flags = flags;
+            this.startNanos = startNanos;
+        }
+
+        void record(int phase) {
+            phases[phase] = System.nanoTime() - startNanos;
+            NavigationMetrics.this.record(tag, flags, phase, phases[phase]);
+        }
+
+        void watch(View view) {
+            this.view = view;
+            view.getViewTreeObserver().addOnPreDrawListener(this);
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            ViewTreeObserver observer = view.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(this);
+            }
+            // Runs once the traversal drawing this frame is over
+            view.post(this);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (phases[PHASE_FIRST_FRAME] < 0) {
+                record(PHASE_FIRST_FRAME);
+            }
+            if (isAnimating()) {
+                if (animationWatcher == null) {
+                    animationWatcher = FrameScheduler.create(this);
+                }
+                animationWatcher.schedule();
+            } else {
+                if (animationWatcher != null) {
+                    record(PHASE_ANIMATION_END);
+                }
+                finish();
+            }
+        }
+
+        private boolean isAnimating() {
+            Animation animation = view.getAnimation();
+            return animation != null && !animation.hasEnded();
+        }
+
+        void finish() {
+            Fragment f = fragment.get();
+            if (f == null || inFlight.remove(f) == null) {
+                return;
+            }
+            if (animationWatcher != null) {
+                animationWatcher.cancel();
+            }
+            if (listener != null) {
+                listener.onNavigationMeasured(tag, flags, phases[PHASE_COMMIT],
+                        phases[PHASE_VIEW_CREATED], phases[PHASE_FIRST_FRAME],
+                        phases[PHASE_ANIMATION_END]);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+import android.support.v4.app.Fragment;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+
+/**
+ * Named trace sections around the navigation work, so it can be lined up with inflation, layout
+ * and GC in Systrace and Perfetto captures.
+ * <p/>
+ * Sections are named <code>Navigation.&lt;phase&gt; &lt;tag&gt; flags=&lt;flags&gt;</code>. Tracing is
+ * off by default and, while off, every call returns before building the section name. Sections
+ * are only emitted on API 18+.
+ * <p/>
+ * The tracing is enabled for the whole process, as the trace itself.
+ */
+public final class NavigationTrace {
+
+    static final String ADD_FRAGMENT = "Navigation.addFragment";
+    static final String FLUSH = "Navigation.flush";
+    static final String CLEAR_BACKSTACK = "Navigation.clearBackstack";
+    static final String COMMIT = "Navigation.commit";
+    static final String POP_BACKSTACK = "Navigation.popBackStack";
+
+    /**
+     * Trace section names can not be longer than this
+     */
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    /**
+     * Receives the trace sections
+     */
+    interface Sink {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    private static final Sink PLATFORM = new PlatformSink();
+
+    private static boolean enabled = false;
+    private static Sink sink = PLATFORM;
+
+    private NavigationTrace() {
+    }
+
+    /**
+     * Enables or disables the navigation trace sections of the whole process.
+     *
+     * @param enabled TRUE to emit trace sections, FALSE otherwise
+     */
+    public static void setEnabled(boolean enabled) {
+        NavigationTrace.enabled = enabled
+                && (sink != PLATFORM || Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2);
+    }
+
+    /**
+     * Replaces the platform trace, so the tests can check the sections emitted.
+     *
+     * @param sink Sink receiving the sections, null for the platform trace
+     */
+    static void setSink(Sink sink) {
+        NavigationTrace.sink = sink != null ? sink : PLATFORM;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a section. Every call must be paired with a call to {@link #end(boolean)} receiving
+     * the returned value, so toggling the tracing in the middle of a section does not unbalance
+     * the trace.
+     *
+     * @param phase Name of the phase
+     * @param tag   Tag of the Fragment involved, may be null
+     * @param flags Navigation flags
+     * @return TRUE if the section has been opened, FALSE otherwise
+     */
+    static boolean begin(String phase, String tag, int flags) {
+        if (enabled) {
+            beginSection(phase + ' ' + tag + " flags=" + flags);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Opens a section for a Fragment, only resolving its tag if tracing is enabled.
+     *
+     * @param phase    Name of the phase
+     * @param fragment Fragment involved
+     * @param flags    Navigation flags
+     * @return TRUE if the section has been opened, FALSE otherwise
+     */
+    static boolean begin(String phase, Fragment fragment, int flags) {
+        if (enabled) {
+            String tag = fragment instanceof NavigationFragment
+                    ? ((NavigationFragment) fragment).getFragmentTag() : fragment.getTag();
+            beginSection(phase + ' ' + tag + " flags=" + flags);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Opens a section without Fragment information.
+     *
+     * @param phase Name of the phase
+     * @return TRUE if the section has been opened, FALSE otherwise
+     */
+    static boolean begin(String phase) {
+        if (enabled) {
+            beginSection(phase);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closes the last opened section.
+     *
+     * @param opened Value returned by the begin call opening the section
+     */
+    static void end(boolean opened) {
+        if (opened) {
+            sink.endSection();
+        }
+    }
+
+    private static void beginSection(String name) {
+        if (name.length() > MAX_SECTION_NAME_LENGTH) {
+            name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+        }
+        sink.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static class PlatformSink implements Sink {
+
+        @Override
+        public void beginSection(String name) {
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void endSection() {
+            Trace.endSection();
+        }
+    }
+}
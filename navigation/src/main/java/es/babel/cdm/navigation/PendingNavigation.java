@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+
+/**
+ * Navigation request waiting to be committed by the {@link NavigationManager NavigationManager}
+ * when transactions are coalesced per frame.
+ */
+class PendingNavigation {
+
+    final Fragment fragment;
+    final FragmentDestination destination;
+    final String tag;
+    final FragmentAnimation animation;
+    final int flags;
+    final int containerId;
+
+    /**
+     * Time the navigation was requested, for the {@link NavigationMetrics metrics}
+     */
+    long startNanos;
+
+    PendingNavigation(Fragment fragment, String tag, FragmentAnimation animation, int flags,
+                      int containerId) {
+        this.fragment = fragment;
+        this.destination = null;
+        this.tag = tag;
+        this.animation = animation;
+        this.flags = flags;
+        this.containerId = containerId;
+    }
+
+    PendingNavigation(FragmentDestination destination, FragmentAnimation animation, int flags,
+                      int containerId) {
+        this.fragment = null;
+        this.destination = destination;
+        this.tag = destination.getTag();
+        this.animation = animation;
+        this.flags = flags;
+        this.containerId = containerId;
+    }
+
+    /**
+     * Checks if both requests lead to the same state of the backstack, as a double tap would do.
+     *
+     * @param other Request to compare to
+     * @return TRUE if both requests have the same tag, flags and container, FALSE otherwise
+     */
+    boolean isSameDestination(PendingNavigation other) {
+        return flags == other.flags
+                && containerId == other.containerId
+                && (tag == null ? other.tag == null : tag.equals(other.tag));
+    }
+}
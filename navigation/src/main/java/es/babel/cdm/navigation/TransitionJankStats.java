@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+/**
+ * Aggregated frame statistics of a group of transitions.
+ */
+public class TransitionJankStats {
+
+    private int transitions = 0;
+    private long frames = 0;
+    private long droppedFrames = 0;
+    private int jankyTransitions = 0;
+    private long worstFrameNanos = 0;
+
+    void record(int frames, int droppedFrames, long worstFrameNanos) {
+        this.transitions++;
+        this.frames += frames;
+        this.droppedFrames += droppedFrames;
+        if (droppedFrames > 0) {
+            this.jankyTransitions++;
+        }
+        if (worstFrameNanos > this.worstFrameNanos) {
+            this.worstFrameNanos = worstFrameNanos;
+        }
+    }
+
+    /**
+     * Number of measured transitions.
+     *
+     * @return Transition count
+     */
+    public int getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Number of transitions which dropped at least one frame.
+     *
+     * @return Janky transition count
+     */
+    public int getJankyTransitions() {
+        return jankyTransitions;
+    }
+
+    /**
+     * Number of frames drawn during the measured transitions.
+     *
+     * @return Frame count
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Number of frames dropped during the measured transitions.
+     *
+     * @return Dropped frame count
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Duration of the longest frame of all the measured transitions.
+     *
+     * @return Worst frame time in nanoseconds
+     */
+    public long getWorstFrameNanos() {
+        return worstFrameNanos;
+    }
+}
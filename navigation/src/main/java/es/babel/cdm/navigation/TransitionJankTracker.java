@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+import android.view.animation.Animation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import es.babel.cdm.navigation.interfaces.OnTransitionJankListener;
+
+/**
+ * Opt-in tracker of the frames drawn during the transitions configured by the
+ * {@link NavigationManager NavigationManager}.
+ * <p/>
+ * From the commit of an animated transaction until the animation of the destination view ends,
+ * every frame is timed. Frames taking longer than the frame interval count as dropped frames.
+ * The results are aggregated per destination tag, per enter animation and per exit animation,
+ * so the janky animation and destination pairs can be told apart, and reported to the
+ * {@link OnTransitionJankListener listener}.
+ */
+public class TransitionJankTracker extends FragmentManager.FragmentLifecycleCallbacks
+        implements FrameScheduler.FrameAction {
+
+    /**
+     * Frame interval of a 60Hz display
+     */
+    public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+    /**
+     * Transitions running longer than this are not waited for anymore
+     */
+    private static final long MAX_TRANSITION_NANOS = 5000000000L;
+
+    private boolean enabled = false;
+    private long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private OnTransitionJankListener listener;
+
+    private final ArrayList<Transition> running = new ArrayList<Transition>();
+    private final HashMap<String, TransitionJankStats> statsByTag =
+            new HashMap<String, TransitionJankStats>();
+    private final HashMap<Integer, TransitionJankStats> statsByEnterAnim =
+            new HashMap<Integer, TransitionJankStats>();
+    private final HashMap<Integer, TransitionJankStats> statsByExitAnim =
+            new HashMap<Integer, TransitionJankStats>();
+
+    private FrameScheduler frameScheduler;
+
+    /**
+     * Enables or disables the tracking. Disabling it discards the running transitions.
+     *
+     * @param enabled TRUE to track the transitions, FALSE otherwise
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            running.clear();
+            if (frameScheduler != null) {
+                frameScheduler.cancel();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the expected frame interval, by default the one of a 60Hz display.
+     *
+     * @param frameIntervalNanos Frame interval in nanoseconds
+     */
+    public void setFrameIntervalNanos(long frameIntervalNanos) {
+        this.frameIntervalNanos = frameIntervalNanos;
+    }
+
+    public void setListener(OnTransitionJankListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts tracking the transition of a committed transaction.
+     *
+     * @param fragment  Destination Fragment
+     * @param tag       Destination tag
+     * @param animation Animation configured in the transaction
+     */
+    public void onCommitted(Fragment fragment, String tag, FragmentAnimation animation) {
+        if (!enabled || animation == null) {
+            return;
+        }
+        running.add(new Transition(fragment, tag, animation.getEnterAnim(),
+                animation.getExitAnim()));
+        if (frameScheduler == null) {
+            frameScheduler = FrameScheduler.create(this);
+        }
+        frameScheduler.schedule();
+    }
+
+    /**
+     * Statistics of the transitions to a destination.
+     *
+     * @param tag Destination tag
+     * @return Statistics or null if there is no transition measured for the tag
+     */
+    public TransitionJankStats getStatsForTag(String tag) {
+        return statsByTag.get(tag);
+    }
+
+    /**
+     * Statistics of the transitions with an enter animation.
+     *
+     * @param enterAnim Enter animation resource
+     * @return Statistics or null if there is no transition measured for the animation
+     */
+    public TransitionJankStats getStatsForEnterAnim(int enterAnim) {
+        return statsByEnterAnim.get(enterAnim);
+    }
+
+    /**
+     * Statistics of the transitions with an exit animation.
+     *
+     * @param exitAnim Exit animation resource
+     * @return Statistics or null if there is no transition measured for the animation
+     */
+    public TransitionJankStats getStatsForExitAnim(int exitAnim) {
+        return statsByExitAnim.get(exitAnim);
+    }
+
+    /**
+     * Discards every recorded statistic.
+     */
+    public void reset() {
+        statsByTag.clear();
+        statsByEnterAnim.clear();
+        statsByExitAnim.clear();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        for (int i = running.size() - 1; i >= 0; i--) {
+            Transition transition = running.get(i);
+            if (transition.onFrame(frameTimeNanos)) {
+                running.remove(i);
+                report(transition);
+            }
+        }
+        if (!running.isEmpty()) {
+            frameScheduler.schedule();
+        }
+    }
+
+    @Override
+    public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v,
+                                      Bundle savedInstanceState) {
+        Transition transition = find(f);
+        if (transition != null) {
+            transition.view = v;
+        }
+    }
+
+    @Override
+    public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+        Transition transition = find(f);
+        if (transition != null) {
+            running.remove(transition);
+            report(transition);
+        }
+    }
+
+    private Transition find(Fragment fragment) {
+        for (int i = running.size() - 1; i >= 0; i--) {
+            if (running.get(i).fragment == fragment) {
+                return running.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void report(Transition transition) {
+        if (transition.frames == 0) {
+            return;
+        }
+        stats(statsByTag, transition.tag).record(transition.frames, transition.droppedFrames,
+                transition.worstFrameNanos);
+        stats(statsByEnterAnim, transition.enterAnim).record(transition.frames,
+                transition.droppedFrames, transition.worstFrameNanos);
+        stats(statsByExitAnim, transition.exitAnim).record(transition.frames,
+                transition.droppedFrames, transition.worstFrameNanos);
+        if (listener != null) {
+            listener.onTransitionMeasured(transition.tag, transition.enterAnim, transition.exitAnim,
+                    transition.frames, transition.droppedFrames, transition.worstFrameNanos);
+        }
+    }
+
+    private static <K> TransitionJankStats stats(HashMap<K, TransitionJankStats> map, K key) {
+        TransitionJankStats stats = map.get(key);
+        if (stats == null) {
+            stats = new TransitionJankStats();
+            map.put(key, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Frames of a running transition
+     */
+    private class Transition {
+
+        final Fragment fragment;
+        final String tag;
+        final int enterAnim;
+        final int exitAnim;
+
+        View view;
+        long firstFrameNanos = 0;
+        long lastFrameNanos = 0;
+        int frames = 0;
+        int droppedFrames = 0;
+        long worstFrameNanos = 0;
+
+        Transition(Fragment fragment, String tag, int enterAnim, int exitAnim) {
+            this.fragment = fragment;
+            this.tag = tag;
+            this.enterAnim = enterAnim;
+            this.exitAnim = exitAnim;
+        }
+
+        /**
+         * Records a frame.
+         *
+         * @param frameTimeNanos Frame time
+         * @return TRUE if the transition has ended, FALSE otherwise
+         */
+        boolean onFrame(long frameTimeNanos) {
+            if (lastFrameNanos == 0) {
+                firstFrameNanos = frameTimeNanos;
+            } else {
+                long duration = frameTimeNanos - lastFrameNanos;
+                frames++;
+                if (duration > worstFrameNanos) {
+                    worstFrameNanos = duration;
+                }
+                long missed = (duration + frameIntervalNanos / 2) / frameIntervalNanos - 1;
+                if (missed > 0) {
+                    droppedFrames += missed;
+                }
+            }
+            lastFrameNanos = frameTimeNanos;
+
+            return (view != null && frames > 0 && !isAnimating())
+                    || frameTimeNanos - firstFrameNanos > MAX_TRANSITION_NANOS;
+        }
+
+        private boolean isAnimating() {
+            Animation animation = view.getAnimation();
+            return animation != null && !animation.hasEnded();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+
+import java.util.ArrayList;
+
+import es.babel.cdm.navigation.interfaces.OnPostponedTransitionListener;
+import es.babel.cdm.navigation.interfaces.PostponedTransitionFragment;
+
+/**
+ * Postpones the shared element transitions to the
+ * {@link PostponedTransitionFragment PostponedTransitionFragments} until their content is ready.
+ * <p/>
+ * The enter transition is postponed as soon as the view of the destination is created, and starts
+ * when the destination calls {@link NavigationManager#startPostponedTransition(Fragment)}. A
+ * transition is never postponed longer than the timeout: after it the transition starts anyway, so
+ * a slow load does not block the navigation. Timeouts are counted and reported to the
+ * {@link OnPostponedTransitionListener listener}.
+ * <p/>
+ * Postponing needs the transaction to be optimized, which the {@link NavigationManager} enables
+ * for these navigations.
+ */
+public class TransitionPostponer extends FragmentManager.FragmentLifecycleCallbacks {
+
+    /**
+     * Default maximum time a transition waits for its destination
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 500;
+
+    private long timeoutMs = DEFAULT_TIMEOUT_MS;
+    private OnPostponedTransitionListener listener;
+
+    private final ArrayList<Postponed> waiting = new ArrayList<Postponed>();
+
+    private int postponedCount = 0;
+    private int timeoutCount = 0;
+
+    private Handler handler;
+
+    /**
+     * Sets the maximum time a transition waits for its destination.
+     *
+     * @param timeoutMs Timeout in milliseconds
+     */
+    public void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setListener(OnPostponedTransitionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Checks if the transition of a navigation is going to be postponed.
+     *
+     * @param fragment  Destination Fragment
+     * @param animation Animation of the navigation
+     * @return TRUE if the transition has shared elements and the destination waits for its
+     * content, FALSE otherwise
+     */
+    public boolean shouldPostpone(Fragment fragment, FragmentAnimation animation) {
+        return animation != null && animation.hasSharedViews()
+                && Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP
+                && fragment instanceof PostponedTransitionFragment
+                && ((PostponedTransitionFragment) fragment).shouldPostponeTransition();
+    }
+
+    /**
+     * Starts waiting for the destination of a committed transaction if its transition has to be
+     * postponed.
+     *
+     * @param fragment  Destination Fragment
+     * @param tag       Destination tag
+     * @param animation Animation configured in the transaction
+     */
+    public void onCommitted(Fragment fragment, String tag, FragmentAnimation animation) {
+        if (shouldPostpone(fragment, animation)) {
+            waiting.add(new Postponed(fragment, tag));
+        }
+    }
+
+    /**
+     * Starts the postponed transition of a destination whose content is ready. Does nothing if
+     * the transition is not postponed anymore.
+     *
+     * @param fragment Destination Fragment
+     */
+    public void onReady(Fragment fragment) {
+        Postponed postponed = find(fragment);
+        if (postponed == null) {
+            return;
+        }
+        if (!postponed.viewCreated) {
+            // Ready before its view was created, there is no need to postpone it
+            waiting.remove(postponed);
+            return;
+        }
+        start(postponed, false);
+    }
+
+    /**
+     * Number of destinations whose transition is waiting for their view or their content.
+     *
+     * @return Waiting destinations
+     */
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Number of transitions postponed so far.
+     *
+     * @return Postponed transitions
+     */
+    public int getPostponedCount() {
+        return postponedCount;
+    }
+
+    /**
+     * Number of postponed transitions started by the timeout.
+     *
+     * @return Timed out transitions
+     */
+    public int getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    @Override
+    public void onFragmentViewCreated(FragmentManager fm, Fragment f, View v,
+                                      Bundle savedInstanceState) {
+        Postponed postponed = find(f);
+        if (postponed == null || postponed.viewCreated) {
+            return;
+        }
+        f.postponeEnterTransition();
+        postponed.viewCreated = true;
+        postponed.startNanos = System.nanoTime();
+        postponedCount++;
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        handler.postDelayed(postponed, timeoutMs);
+    }
+
+    @Override
+    public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+        forget(f);
+    }
+
+    @Override
+    public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        // Destinations whose view is never created, as the intermediate ones of an optimized
+        // batch, are only released here
+        forget(f);
+    }
+
+    @Override
+    public void onFragmentDetached(FragmentManager fm, Fragment f) {
+        forget(f);
+    }
+
+    private void forget(Fragment fragment) {
+        Postponed postponed = find(fragment);
+        if (postponed != null) {
+            waiting.remove(postponed);
+            if (handler != null) {
+                handler.removeCallbacks(postponed);
+            }
+        }
+    }
+
+    private void start(Postponed postponed, boolean timedOut) {
+        waiting.remove(postponed);
+        if (handler != null) {
+            handler.removeCallbacks(postponed);
+        }
+        if (timedOut) {
+            timeoutCount++;
+        }
+        postponed.fragment.startPostponedEnterTransition();
+        if (listener != null) {
+            listener.onPostponedTransitionStarted(postponed.tag,
+                    System.nanoTime() - postponed.startNanos, timedOut);
+        }
+    }
+
+    private Postponed find(Fragment fragment) {
+        for (int i = waiting.size() - 1; i >= 0; i--) {
+            if (waiting.get(i).fragment == fragment) {
+                return waiting.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Transition waiting for its destination, run when its timeout expires
+     */
+    private class Postponed implements Runnable {
+        final Fragment fragment;
+        final String tag;
+        boolean viewCreated = false;
+        long startNanos;
+
+        Postponed(Fragment fragment, String tag) {
+            this.fragment = fragment;
+            this.tag = tag;
+        }
+
+        @Override
+        public void run() {
+            if (waiting.contains(this)) {
+                start(this, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+
+import java.util.ArrayList;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+
+/**
+ * Keeps track of the {@link NavigationFragment NavigationFragment} currently on screen through the
+ * FragmentManager lifecycle callbacks, so the {@link NavigationManager NavigationManager} does not
+ * need to scan the fragment list to find it.
+ * <p/>
+ * The resumed NavigationFragments are kept in the order they were resumed, the last one being the
+ * visible one. A Fragment only leaves the list when it is removed, detached or loses its view, so
+ * pausing the Activity does not lose the current Fragment.
+ */
+public class VisibleFragmentTracker extends FragmentManager.FragmentLifecycleCallbacks {
+
+    private final ArrayList<Fragment> resumed = new ArrayList<Fragment>();
+
+    private NavigationFragment current;
+
+    /**
+     * Returns the NavigationFragment currently on screen.
+     *
+     * @return Visible NavigationFragment or null if there is none
+     */
+    public NavigationFragment getCurrent() {
+        return current;
+    }
+
+    @Override
+    public void onFragmentResumed(FragmentManager fm, Fragment f) {
+        if (f instanceof NavigationFragment) {
+            int last = resumed.size() - 1;
+            if (last < 0 || resumed.get(last) != f) {
+                resumed.remove(f);
+                resumed.add(f);
+            }
+            current = (NavigationFragment) f;
+        }
+    }
+
+    @Override
+    public void onFragmentPaused(FragmentManager fm, Fragment f) {
+        if (f.isRemoving() || f.isDetached()) {
+            forget(f);
+        }
+    }
+
+    @Override
+    public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+        forget(f);
+    }
+
+    @Override
+    public void onFragmentDetached(FragmentManager fm, Fragment f) {
+        forget(f);
+    }
+
+    /**
+     * Forgets every tracked Fragment.
+     */
+    public void clear() {
+        resumed.clear();
+        current = null;
+    }
+
+    private void forget(Fragment f) {
+        if (f instanceof NavigationFragment) {
+            // The Fragment being removed is almost always the last one
+            for (int i = resumed.size() - 1; i >= 0; i--) {
+                if (resumed.get(i) == f) {
+                    resumed.remove(i);
+                    break;
+                }
+            }
+            int last = resumed.size() - 1;
+            current = last >= 0 ? (NavigationFragment) resumed.get(last) : null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+
+/**
+ * Back stack and transactions the {@link es.babel.cdm.navigation.NavigationManager
+ * NavigationManager} navigates on.
+ * <p/>
+ * It only exposes the subset of the FragmentManager the navigation needs, with the same
+ * semantics. On a device it is backed by the Activity FragmentManager
+ * ({@link es.babel.cdm.navigation.FragmentManagerStack FragmentManagerStack}), while the tests
+ * and benchmarks run the navigation rules on a plain JVM over an in-memory implementation.
+ */
+public interface NavigationStack {
+
+    /**
+     * Transaction over a {@link NavigationStack}, following the FragmentTransaction contract.
+     */
+    interface Transaction {
+
+        Transaction add(Fragment fragment, String tag);
+
+        Transaction add(int containerId, Fragment fragment, String tag);
+
+        Transaction replace(int containerId, Fragment fragment, String tag);
+
+        Transaction remove(Fragment fragment);
+
+        Transaction hide(Fragment fragment);
+
+        Transaction detach(Fragment fragment);
+
+        Transaction attach(Fragment fragment);
+
+        Transaction setCustomAnimations(int enter, int exit);
+
+        Transaction setCustomAnimations(int enter, int exit, int popEnter, int popExit);
+
+        Transaction addSharedElement(View sharedElement, String name);
+
+        Transaction addToBackStack(String name);
+
+        Transaction setAllowOptimization(boolean allowOptimization);
+
+        int commit();
+
+        int commitAllowingStateLoss();
+
+        void commitNow();
+
+        void commitNowAllowingStateLoss();
+    }
+
+    Transaction beginTransaction();
+
+    boolean executePendingTransactions();
+
+    Fragment findFragmentById(int id);
+
+    Fragment findFragmentByTag(String tag);
+
+    int getBackStackEntryCount();
+
+    FragmentManager.BackStackEntry getBackStackEntryAt(int index);
+
+    void popBackStack(String name, int flags);
+
+    boolean popBackStackImmediate();
+
+    boolean popBackStackImmediate(String name, int flags);
+
+    boolean popBackStackImmediate(int id, int flags);
+
+    void addOnBackStackChangedListener(FragmentManager.OnBackStackChangedListener listener);
+
+    void removeOnBackStackChangedListener(FragmentManager.OnBackStackChangedListener listener);
+
+    /**
+     * Registers callbacks for the lifecycle of the Fragments of this stack. Implementations not
+     * backed by a FragmentManager dispatch them with a null FragmentManager.
+     *
+     * @param callbacks Callbacks to register
+     */
+    void registerFragmentLifecycleCallbacks(FragmentManager.FragmentLifecycleCallbacks callbacks);
+
+    void unregisterFragmentLifecycleCallbacks(
+            FragmentManager.FragmentLifecycleCallbacks callbacks);
+
+    boolean isDestroyed();
+
+    /**
+     * Saves the instance state of a Fragment of this stack, views included, to be set on a new
+     * instance with {@link Fragment#setInitialSavedState(Fragment.SavedState)}.
+     *
+     * @param fragment Fragment of this stack
+     * @return Saved state, or null if the Fragment has none
+     */
+    Fragment.SavedState saveFragmentInstanceState(Fragment fragment);
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+import es.babel.cdm.navigation.BackStackSnapshot;
+
+/**
+ * Receives the navigation stack read by the
+ * {@link es.babel.cdm.navigation.BackStackStore BackStackStore}.
+ */
+public interface OnBackStackLoadedListener {
+
+    /**
+     * Called on the main thread when the stack has been read.
+     *
+     * @param snapshot Stack read, or null if it was not found or could not be read
+     */
+    void onBackStackLoaded(BackStackSnapshot snapshot);
+}
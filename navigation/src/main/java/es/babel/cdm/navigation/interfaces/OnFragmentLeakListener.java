@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+/**
+ * Receives the Fragments reported as leaked by the
+ * {@link es.babel.cdm.navigation.FragmentLeakWatcher FragmentLeakWatcher}.
+ */
+public interface OnFragmentLeakListener {
+
+    /**
+     * Called when a destroyed Fragment is still reachable after a garbage collection.
+     *
+     * @param tag       Tag of the leaked Fragment
+     * @param className Class of the leaked Fragment
+     */
+    void onFragmentLeaked(String tag, String className);
+}
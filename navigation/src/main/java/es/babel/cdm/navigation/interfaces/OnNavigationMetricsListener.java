@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+/**
+ * Receives the latency of every navigation measured by the
+ * {@link es.babel.cdm.navigation.NavigationManager NavigationManager}.
+ * <p/>
+ * All the phases are measured from the moment the navigation is requested. A phase that has not
+ * been reached, as the animation end of a navigation without animation or the view of a Fragment
+ * discarded before being shown, is reported as -1.
+ */
+public interface OnNavigationMetricsListener {
+
+    /**
+     * Called on the main thread when a navigation finishes its transition.
+     *
+     * @param tag               Tag of the destination Fragment
+     * @param flags             Flags of the navigation
+     * @param commitNanos       Time until the transaction was committed
+     * @param viewCreatedNanos  Time until the destination view was created
+     * @param firstFrameNanos   Time until the first frame with the destination was drawn
+     * @param animationEndNanos Time until the transition animation ended
+     */
+    void onNavigationMeasured(String tag, int flags, long commitNanos, long viewCreatedNanos,
+                              long firstFrameNanos, long animationEndNanos);
+}
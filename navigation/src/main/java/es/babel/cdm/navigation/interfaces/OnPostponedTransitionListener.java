@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+/**
+ * Receives the outcome of every shared element transition postponed by the
+ * {@link es.babel.cdm.navigation.TransitionPostponer TransitionPostponer}.
+ */
+public interface OnPostponedTransitionListener {
+
+    /**
+     * Called on the main thread when a postponed transition starts.
+     *
+     * @param tag       Tag of the destination Fragment
+     * @param waitNanos Time the transition has been postponed
+     * @param timedOut  TRUE if the destination did not get ready in time and the transition was
+     *                  started by the timeout, FALSE otherwise
+     */
+    void onPostponedTransitionStarted(String tag, long waitNanos, boolean timedOut);
+}
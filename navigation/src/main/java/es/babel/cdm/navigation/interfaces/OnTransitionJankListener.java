@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+/**
+ * Receives the frame statistics of every transition measured by the
+ * {@link es.babel.cdm.navigation.TransitionJankTracker TransitionJankTracker}.
+ */
+public interface OnTransitionJankListener {
+
+    /**
+     * Called on the main thread when a transition ends.
+     *
+     * @param tag             Tag of the destination Fragment
+     * @param enterAnim       Enter animation resource of the transaction
+     * @param exitAnim        Exit animation resource of the transaction
+     * @param frames          Number of frames between the commit and the end of the animation
+     * @param droppedFrames   Number of frames missed in the same period
+     * @param worstFrameNanos Duration of the longest frame
+     */
+    void onTransitionMeasured(String tag, int enterAnim, int exitAnim, int frames,
+                              int droppedFrames, long worstFrameNanos);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+/**
+ * Implemented by the destination Fragments whose content is not ready when their view is created,
+ * as the ones loading their images asynchronously.
+ * <p/>
+ * The shared element transition to such a Fragment is postponed until it calls
+ * {@link es.babel.cdm.navigation.NavigationManager#startPostponedTransition(android.support.v4.app.Fragment)
+ * startPostponedTransition}, or until the timeout of the
+ * {@link es.babel.cdm.navigation.TransitionPostponer TransitionPostponer} expires.
+ */
+public interface PostponedTransitionFragment {
+
+    /**
+     * Checks if the enter transition of the Fragment has to wait for its content.
+     *
+     * @return TRUE to postpone the shared element transition, FALSE otherwise
+     */
+    boolean shouldPostponeTransition();
+}
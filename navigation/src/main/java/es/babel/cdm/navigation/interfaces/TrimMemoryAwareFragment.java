@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation.interfaces;
+
+/**
+ * Implemented by the Fragments holding resources they can rebuild later, such as caches or
+ * decoded bitmaps, which want to release them when the system asks the application to free memory.
+ * <p/>
+ * Every Fragment of the backstack implementing it is notified by the
+ * {@link es.babel.cdm.navigation.NavigationManager#onTrimMemory(int) NavigationManager}, off-screen
+ * Fragments included, before the navigation layer releases their views.
+ */
+public interface TrimMemoryAwareFragment {
+
+    /**
+     * Called when the system asks the application to release memory. The Fragment should drop
+     * its resources more aggressively the higher the level is.
+     *
+     * @param level Trim level as received by
+     *              {@link android.content.ComponentCallbacks2#onTrimMemory(int) onTrimMemory(int)}
+     */
+    void onTrimMemory(int level);
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Keeps the bytes allocated by each navigation call under the budget checked in at
+ * <code>src/test/resources/allocation-budget.properties</code>.
+ * <p/>
+ * The calls are made on a NavigationManager running on an {@link InMemoryNavigationStack}, with
+ * the flags and animations NavigationActivity uses for them, so only the allocations of the
+ * library are measured and the test runs on the JVM. Every call is measured with the allocation
+ * counter of the current thread, averaged over {@link #CALLS} calls made after {@link #WARM_UP}
+ * warm up calls. The Fragments are created outside of the measure.
+ * <p/>
+ * A call fails when it allocates more than its recorded bytes plus the tolerance, in percent,
+ * recorded next to them. Running the tests with <code>-Dallocation.budget.record=true</code> does
+ * not check the budget and writes the measured values, with the current tolerances, to
+ * <code>build/allocation-budget.properties</code>.
+ */
+public class AllocationBudgetTest {
+
+    private static final String BUDGET = "/allocation-budget.properties";
+    private static final String RECORD_PROPERTY = "allocation.budget.record";
+    private static final String TOLERANCE_SUFFIX = ".tolerance";
+    private static final int DEFAULT_TOLERANCE = 10;
+
+    private static final int CONTAINER = 1;
+    private static final int WARM_UP = 200;
+    private static final int CALLS = 50;
+
+    private static Properties budget;
+    private static final Properties measured = new Properties();
+
+    private com.sun.management.ThreadMXBean threads;
+    private NavigationManager navigationManager;
+    private int created = 0;
+
+    /**
+     * Navigation call to measure
+     */
+    private interface Navigation {
+        void navigate(TestNavigationFragment fragment);
+    }
+
+    @BeforeClass
+    public static void loadBudget() throws IOException {
+        InputStream input = AllocationBudgetTest.class.getResourceAsStream(BUDGET);
+        assertNotNull("Missing " + BUDGET, input);
+        budget = new Properties();
+        try {
+            budget.load(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    @AfterClass
+    public static void recordBudget() throws IOException {
+        if (!isRecording()) {
+            return;
+        }
+        File file = new File("build", "allocation-budget.properties");
+        file.getParentFile().mkdirs();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            measured.store(output, "Measured by AllocationBudgetTest");
+        } finally {
+            output.close();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(new InMemoryNavigationStack());
+        down(newFragment(), AnimationPresets.FADE);
+    }
+
+    @Test
+    public void navigateDown() {
+        assertWithinBudget("navigateDown", measureDown(new Navigation() {
+            @Override
+            public void navigate(TestNavigationFragment fragment) {
+                down(fragment, AnimationPresets.FADE);
+            }
+        }));
+    }
+
+    @Test
+    public void navigateDownInverse() {
+        assertWithinBudget("navigateDownInverse", measureDown(new Navigation() {
+            @Override
+            public void navigate(TestNavigationFragment fragment) {
+                down(fragment, AnimationPresets.CONTINUOUS_SLIDE_BACK);
+            }
+        }));
+    }
+
+    @Test
+    public void navigateToSection() {
+        assertWithinBudget("navigateToSection", measureDown(new Navigation() {
+            @Override
+            public void navigate(TestNavigationFragment fragment) {
+                section(fragment, AnimationPresets.FADE);
+            }
+        }));
+    }
+
+    @Test
+    public void navigateToSectionInverse() {
+        assertWithinBudget("navigateToSectionInverse", measureDown(new Navigation() {
+            @Override
+            public void navigate(TestNavigationFragment fragment) {
+                section(fragment, AnimationPresets.CONTINUOUS_SLIDE_BACK);
+            }
+        }));
+    }
+
+    @Test
+    public void navigateUp() {
+        push(WARM_UP);
+        popToRoot();
+
+        push(CALLS);
+        long bytes = 0;
+        for (int i = 0; i < CALLS; i++) {
+            long before = allocatedBytes();
+            navigationManager.popBackStack(CONTAINER);
+            bytes += allocatedBytes() - before;
+        }
+
+        assertWithinBudget("navigateUp", bytes / CALLS);
+    }
+
+    /**
+     * Average bytes allocated by a navigation to a new Fragment.
+     */
+    private long measureDown(Navigation navigation) {
+        for (int i = 0; i < WARM_UP; i++) {
+            navigation.navigate(newFragment());
+        }
+        popToRoot();
+
+        long bytes = 0;
+        for (int i = 0; i < CALLS; i++) {
+            TestNavigationFragment fragment = newFragment();
+            long before = allocatedBytes();
+            navigation.navigate(fragment);
+            bytes += allocatedBytes() - before;
+        }
+        return bytes / CALLS;
+    }
+
+    private void down(TestNavigationFragment fragment, FragmentAnimation animation) {
+        navigationManager.addFragment(fragment, fragment.getFragmentTag(), animation,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+    }
+
+    private void section(TestNavigationFragment fragment, FragmentAnimation animation) {
+        navigationManager.addFragment(fragment, fragment.getFragmentTag(), animation,
+                NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK, CONTAINER);
+    }
+
+    private void push(int count) {
+        for (int i = 0; i < count; i++) {
+            down(newFragment(), AnimationPresets.FADE);
+        }
+    }
+
+    private void popToRoot() {
+        while (navigationManager.getBackStackEntryCount() > 1) {
+            navigationManager.popBackStack(CONTAINER);
+        }
+    }
+
+    private TestNavigationFragment newFragment() {
+        return new TestNavigationFragment("fragment_" + created++);
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean isRecording() {
+        return Boolean.parseBoolean(System.getProperty(RECORD_PROPERTY));
+    }
+
+    private static int tolerance(String call) {
+        String value = budget.getProperty(call + TOLERANCE_SUFFIX);
+        return value != null ? Integer.parseInt(value.trim()) : DEFAULT_TOLERANCE;
+    }
+
+    private static void assertWithinBudget(String call, long bytes) {
+        int tolerance = tolerance(call);
+        measured.setProperty(call, String.valueOf(bytes));
+        measured.setProperty(call + TOLERANCE_SUFFIX, String.valueOf(tolerance));
+        if (isRecording()) {
+            return;
+        }
+        String value = budget.getProperty(call);
+        assertNotNull("No allocation budget for " + call, value);
+        long recorded = Long.parseLong(value.trim());
+        long limit = recorded + recorded * tolerance / 100;
+        assertTrue(call + " allocates " + bytes + " bytes per call, over its budget of "
+                + recorded + " bytes + " + tolerance + "%", bytes <= limit);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BackStackIndexTest {
+
+    private FakeFragmentManager fake;
+    private BackStackIndex index;
+
+    @Before
+    public void setUp() {
+        fake = new FakeFragmentManager();
+        index = new BackStackIndex(fake.fm);
+        fake.fm.addOnBackStackChangedListener(index);
+    }
+
+    @Test
+    public void mirrorsPushesAndPops() {
+        TestNavigationFragment first = new TestNavigationFragment("first");
+        TestNavigationFragment second = new TestNavigationFragment("second");
+        fake.push(first);
+        fake.push(second);
+
+        assertEquals(2, index.size());
+        assertEquals("second", index.topTag());
+        assertSame(second, index.top());
+        assertEquals(0, index.positionOf("first"));
+
+        fake.fm.popBackStackImmediate();
+
+        assertEquals(1, index.size());
+        assertSame(first, index.top());
+        assertFalse(index.contains("second"));
+    }
+
+    @Test
+    public void restoresPreviousPositionOfRepeatedTags() {
+        fake.push(new TestNavigationFragment("list"));
+        fake.push(new TestNavigationFragment("detail"));
+        fake.push(new TestNavigationFragment("list"));
+
+        assertEquals(2, index.positionOf("list"));
+
+        fake.fm.popBackStackImmediate();
+
+        assertTrue(index.contains("list"));
+        assertEquals(0, index.positionOf("list"));
+    }
+
+    @Test
+    public void clearingAndAddingTheSameTagInOneBatchFindsTheNewFragment() {
+        fake.push(new TestNavigationFragment("home"));
+        index.top();
+        TestNavigationFragment home = new TestNavigationFragment("home");
+
+        fake.clearAndPush(home);
+
+        assertEquals(1, index.size());
+        assertSame(home, index.top());
+    }
+
+    @Test
+    public void emptyBackStackHasNoTop() {
+        assertEquals(0, index.size());
+        assertNull(index.top());
+        assertEquals(-1, index.positionOf("any"));
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class BackStackSnapshotTest {
+
+    private static final int CONTAINER = 1;
+
+    private InMemoryNavigationStack stack;
+    private NavigationManager navigationManager;
+
+    @Before
+    public void setUp() {
+        stack = new InMemoryNavigationStack();
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(stack);
+    }
+
+    @Test
+    public void snapshotKeepsEveryEntryWithItsArguments() throws IOException {
+        navigate(0, NavigationManager.ADD_TO_BACKSTACK);
+        navigate(1, NavigationManager.ADD_TO_BACKSTACK);
+        navigate(2, NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
+
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        assertEquals(CONTAINER, snapshot.getContainerId());
+        assertEquals(3, snapshot.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("fragment_" + i, snapshot.getTag(i));
+            assertEquals(RestorableFragment.class.getName(), snapshot.getClassName(i));
+            assertEquals(i, snapshot.getArguments(i).getInt("index"));
+        }
+        assertTrue(snapshot.isInBackStack(1));
+        assertFalse(snapshot.isInBackStack(2));
+    }
+
+    @Test
+    public void fragmentWithoutArgumentsIsKept() throws IOException {
+        navigationManager.addFragment(new RestorableFragment(), "plain", null,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        assertEquals(1, snapshot.size());
+        assertNull(snapshot.getArguments(0));
+    }
+
+    @Test
+    public void argumentsChangedAfterTheSnapshotAreNotWritten() throws IOException {
+        RestorableFragment fragment = navigate(0, NavigationManager.ADD_TO_BACKSTACK);
+        BackStackSnapshot taken = navigationManager.snapshot(CONTAINER);
+
+        fragment.getArguments().putInt("index", 7);
+        BackStackSnapshot snapshot = writeAndRead(taken);
+
+        assertEquals(0, snapshot.getArguments(0).getInt("index"));
+    }
+
+    @Test
+    public void restoredStackHasTheSameEntries() throws IOException {
+        navigate(0, NavigationManager.ADD_TO_BACKSTACK);
+        navigate(1, NavigationManager.ADD_TO_BACKSTACK);
+        navigate(2, NavigationManager.ADD_TO_BACKSTACK);
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        InMemoryNavigationStack restoredStack = new InMemoryNavigationStack();
+        NavigationManager restored = new NavigationManager();
+        restored.initialize(restoredStack);
+        restored.restore(RuntimeEnvironment.application, snapshot);
+
+        assertEquals(3, restored.getBackStackEntryCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("fragment_" + i, restoredStack.getBackStackEntryAt(i).getName());
+        }
+        assertEquals(2, restoredStack.findFragmentById(CONTAINER).getArguments().getInt("index"));
+    }
+
+    @Test
+    public void restoredFragmentsGetTheirSavedState() throws IOException {
+        navigate(0, NavigationManager.ADD_TO_BACKSTACK);
+        RestorableFragment top = navigate(1, NavigationManager.ADD_TO_BACKSTACK);
+        stack.setSavedState(top, savedState(42));
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        assertNull(snapshot.getSavedState(0));
+        InMemoryNavigationStack restoredStack = new InMemoryNavigationStack();
+        NavigationManager restored = new NavigationManager();
+        restored.initialize(restoredStack);
+        restored.restore(RuntimeEnvironment.application, snapshot);
+
+        RestorableFragment restoredTop =
+                (RestorableFragment) restoredStack.findFragmentById(CONTAINER);
+        assertEquals(42, scrollOf(restoredTop.initialState));
+        assertNull(((RestorableFragment) restoredStack.findFragmentByTag("fragment_0"))
+                .initialState);
+    }
+
+    @Test
+    public void placeholdersKeepTheirSavedState() throws IOException {
+        RestorableFragment bottom = navigate(0, NavigationManager.ADD_TO_BACKSTACK);
+        stack.setSavedState(bottom, savedState(7));
+        navigate(1, NavigationManager.ADD_TO_BACKSTACK);
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        InMemoryNavigationStack restoredStack = new InMemoryNavigationStack();
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(restoredStack);
+        navigationManager.restoreLazily(RuntimeEnvironment.application, snapshot);
+        BackStackSnapshot again = writeAndRead(navigationManager.snapshot(CONTAINER));
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(7, scrollOf(again.getSavedState(0)));
+        assertEquals(7, scrollOf(((RestorableFragment) restoredStack.findFragmentById(CONTAINER))
+                .initialState));
+    }
+
+    @Test
+    public void lazyRestoreOnlyCreatesTheTopFragment() throws IOException {
+        InMemoryNavigationStack restoredStack = restoreLazily(4);
+
+        assertEquals(1, restoredStack.getAddedFragments().size());
+        assertEquals(3, restoredStack.findFragmentById(CONTAINER).getArguments().getInt("index"));
+    }
+
+    @Test
+    public void navigatingUpCreatesThePlaceholders() throws IOException {
+        InMemoryNavigationStack restoredStack = restoreLazily(4);
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(3, navigationManager.getBackStackEntryCount());
+        assertEquals(2, restoredStack.findFragmentById(CONTAINER).getArguments().getInt("index"));
+
+        navigationManager.popBackStackLevels(CONTAINER, 2);
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertEquals(1, restoredStack.getAddedFragments().size());
+        assertEquals(0, restoredStack.findFragmentById(CONTAINER).getArguments().getInt("index"));
+    }
+
+    @Test
+    public void lazyRestoreIsKeptBySnapshots() throws IOException {
+        restoreLazily(4);
+        navigate(4, NavigationManager.ADD_TO_BACKSTACK);
+
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        assertEquals(5, snapshot.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fragment_" + i, snapshot.getTag(i));
+            assertEquals(i, snapshot.getArguments(i).getInt("index"));
+        }
+    }
+
+    /**
+     * Restores lazily a stack of the given depth into a new NavigationManager, which replaces the
+     * current one
+     */
+    private InMemoryNavigationStack restoreLazily(int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            navigate(i, NavigationManager.ADD_TO_BACKSTACK);
+        }
+        BackStackSnapshot snapshot = writeAndRead(navigationManager.snapshot(CONTAINER));
+
+        InMemoryNavigationStack restoredStack = new InMemoryNavigationStack();
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(restoredStack);
+        navigationManager.restoreLazily(RuntimeEnvironment.application, snapshot);
+        assertEquals(depth, navigationManager.getBackStackEntryCount());
+        return restoredStack;
+    }
+
+    private RestorableFragment navigate(int index, int flags) {
+        RestorableFragment fragment = new RestorableFragment();
+        Bundle arguments = new Bundle();
+        arguments.putInt("index", index);
+        fragment.setArguments(arguments);
+        navigationManager.addFragment(fragment, "fragment_" + index, null, flags, CONTAINER);
+        return fragment;
+    }
+
+    private static Fragment.SavedState savedState(int scroll) {
+        Bundle state = new Bundle();
+        state.putInt("scroll", scroll);
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            parcel.setDataPosition(0);
+            return Fragment.SavedState.CREATOR.createFromParcel(parcel,
+                    BackStackSnapshotTest.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static int scrollOf(Fragment.SavedState state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            state.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return parcel.readBundle().getInt("scroll");
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static BackStackSnapshot writeAndRead(BackStackSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        snapshot.writeTo(out);
+        out.close();
+        return BackStackSnapshot.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                BackStackSnapshotTest.class.getClassLoader());
+    }
+
+    public static class RestorableFragment extends TestNavigationFragment {
+
+        Fragment.SavedState initialState;
+
+        public RestorableFragment() {
+            super(null);
+        }
+
+        @Override
+        public void setInitialSavedState(SavedState state) {
+            super.setInitialSavedState(state);
+            initialState = state;
+        }
+
+        @Override
+        public String getFragmentTag() {
+            Bundle arguments = getArguments();
+            return arguments != null ? "fragment_" + arguments.getInt("index") : "plain";
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mockito backed FragmentManager with a list based backstack, so the tests can count the
+ * operations NavigationManager performs on it.
+ */
+public class FakeFragmentManager {
+
+    public final FragmentManager fm = mock(FragmentManager.class);
+
+    private final List<FragmentManager.BackStackEntry> entries =
+            new ArrayList<FragmentManager.BackStackEntry>();
+    private final Map<String, Fragment> fragments = new HashMap<String, Fragment>();
+    private final List<FragmentManager.OnBackStackChangedListener> listeners =
+            new ArrayList<FragmentManager.OnBackStackChangedListener>();
+    private int nextId = 0;
+
+    public FakeFragmentManager() {
+        when(fm.getBackStackEntryCount()).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                return entries.size();
+            }
+        });
+        when(fm.getBackStackEntryAt(anyInt())).thenAnswer(
+                new Answer<FragmentManager.BackStackEntry>() {
+                    @Override
+                    public FragmentManager.BackStackEntry answer(InvocationOnMock invocation) {
+                        return entries.get((Integer) invocation.getArguments()[0]);
+                    }
+                });
+        when(fm.findFragmentByTag(anyString())).thenAnswer(new Answer<Fragment>() {
+            @Override
+            public Fragment answer(InvocationOnMock invocation) {
+                return fragments.get((String) invocation.getArguments()[0]);
+            }
+        });
+        when(fm.findFragmentById(anyInt())).thenAnswer(new Answer<Fragment>() {
+            @Override
+            public Fragment answer(InvocationOnMock invocation) {
+                return entries.isEmpty() ? null : fragments.get(entries.get(entries.size() - 1).getName());
+            }
+        });
+        when(fm.popBackStackImmediate()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                if (entries.isEmpty()) {
+                    return false;
+                }
+                remove(entries.size() - 1);
+                notifyListeners();
+                return true;
+            }
+        });
+        when(fm.popBackStackImmediate(anyInt(), anyInt())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                int id = (Integer) invocation.getArguments()[0];
+                int flags = (Integer) invocation.getArguments()[1];
+                for (int i = entries.size() - 1; i >= 0; i--) {
+                    if (entries.get(i).getId() == id) {
+                        int lowest = (flags & FragmentManager.POP_BACK_STACK_INCLUSIVE) != 0 ? i : i + 1;
+                        while (entries.size() > lowest) {
+                            remove(entries.size() - 1);
+                        }
+                        notifyListeners();
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        when(fm.popBackStackImmediate(anyString(), anyInt())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                String tag = (String) invocation.getArguments()[0];
+                int flags = (Integer) invocation.getArguments()[1];
+                return popToTag(tag, flags);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                String tag = (String) invocation.getArguments()[0];
+                int flags = (Integer) invocation.getArguments()[1];
+                popToTag(tag, flags);
+                return null;
+            }
+        }).when(fm).popBackStack(anyString(), anyInt());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                listeners.add((FragmentManager.OnBackStackChangedListener) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(fm).addOnBackStackChangedListener(any(FragmentManager.OnBackStackChangedListener.class));
+    }
+
+    /**
+     * Pushes a fragment as if a transaction adding it to the backstack had been executed.
+     *
+     * @param fragment Fragment to push
+     */
+    public void push(TestNavigationFragment fragment) {
+        FragmentManager.BackStackEntry entry = mock(FragmentManager.BackStackEntry.class);
+        when(entry.getId()).thenReturn(nextId++);
+        when(entry.getName()).thenReturn(fragment.getFragmentTag());
+        entries.add(entry);
+        fragments.put(fragment.getFragmentTag(), fragment);
+        notifyListeners();
+    }
+
+    /**
+     * Clears the backstack and pushes a fragment in a single batch, reusing the freed entry ids as
+     * the FragmentManager does.
+     *
+     * @param fragment Fragment to push
+     */
+    public void clearAndPush(TestNavigationFragment fragment) {
+        while (!entries.isEmpty()) {
+            remove(entries.size() - 1);
+        }
+        nextId = 0;
+        FragmentManager.BackStackEntry entry = mock(FragmentManager.BackStackEntry.class);
+        when(entry.getId()).thenReturn(nextId++);
+        when(entry.getName()).thenReturn(fragment.getFragmentTag());
+        entries.add(entry);
+        fragments.put(fragment.getFragmentTag(), fragment);
+        notifyListeners();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private boolean popToTag(String tag, int flags) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (tag == null || tag.equals(entries.get(i).getName())) {
+                int lowest = tag == null
+                        || (flags & FragmentManager.POP_BACK_STACK_INCLUSIVE) != 0 ? i : i + 1;
+                while (entries.size() > lowest) {
+                    remove(entries.size() - 1);
+                }
+                notifyListeners();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void notifyListeners() {
+        for (FragmentManager.OnBackStackChangedListener listener : listeners) {
+            listener.onBackStackChanged();
+        }
+    }
+
+    private void remove(int position) {
+        FragmentManager.BackStackEntry entry = entries.remove(position);
+        fragments.remove(entry.getName());
+    }
+}
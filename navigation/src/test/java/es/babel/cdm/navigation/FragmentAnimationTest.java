@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FragmentAnimationTest {
+
+    @Test
+    public void animationWithoutSharedViewsHasNoSharedViews() {
+        FragmentAnimation animation = new FragmentAnimation(1, 2, 3, 4, null);
+
+        assertFalse(animation.hasSharedViews());
+        assertEquals(0, animation.getSharedViews().length);
+        assertSame(animation.getSharedViews(), AnimationPresets.FADE.getSharedViews());
+    }
+
+    @Test
+    public void sharedViewsCannotBeChangedFromOutside() {
+        LollipopAnim[] sharedViews = new LollipopAnim[1];
+        FragmentAnimation animation = new FragmentAnimation(1, 2, sharedViews);
+
+        LollipopAnim[] returned = animation.getSharedViews();
+
+        assertTrue(animation.hasSharedViews());
+        assertNotSame(sharedViews, returned);
+        assertNotSame(returned, animation.getSharedViews());
+    }
+}
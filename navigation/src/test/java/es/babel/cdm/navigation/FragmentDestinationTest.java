@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Navigations to a {@link FragmentDestination} on an {@link InMemoryNavigationStack}.
+ */
+public class FragmentDestinationTest {
+
+    private static final int CONTAINER = 1;
+
+    private InMemoryNavigationStack stack;
+    private NavigationManager navigationManager;
+
+    @Before
+    public void setUp() {
+        stack = new InMemoryNavigationStack();
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(stack);
+    }
+
+    @Test
+    public void destinationCreatesItsFragment() {
+        Object fragment = new FragmentDestination(DetailFragment.class, null, "detail").instantiate();
+
+        assertTrue(fragment instanceof DetailFragment);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void destinationWithAnotherTagIsRejected() {
+        new FragmentDestination(DetailFragment.class, null, "other").instantiate();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void destinationWithAnotherSingleInstanceFlagIsRejected() {
+        new FragmentDestination(DetailFragment.class, null, "detail", true).instantiate();
+    }
+
+    @Test
+    public void navigatingToADestinationStacksItsFragment() {
+        navigate(new FragmentDestination(DetailFragment.class, null, "detail"));
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertTrue(stack.findFragmentById(CONTAINER) instanceof DetailFragment);
+        assertEquals("detail", stack.getBackStackEntryAt(0).getName());
+    }
+
+    @Test
+    public void singleInstanceDestinationInBackStackIsNotCreatedAgain() {
+        FragmentDestination single = new FragmentDestination(SingleFragment.class, null, "single",
+                true);
+        navigate(single);
+        Object first = stack.findFragmentById(CONTAINER);
+        navigate(new FragmentDestination(DetailFragment.class, null, "detail"));
+
+        navigate(single);
+
+        assertEquals(2, navigationManager.getBackStackEntryCount());
+        navigationManager.popBackStack(CONTAINER);
+        assertSame(first, stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void wrongDestinationDoesNotChangeTheStack() {
+        navigate(new FragmentDestination(DetailFragment.class, null, "detail"));
+
+        try {
+            navigate(new FragmentDestination(SingleFragment.class, null, "other"));
+        } catch (IllegalStateException expected) {
+            // The navigation is rejected before its transaction
+        }
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertTrue(stack.findFragmentById(CONTAINER) instanceof DetailFragment);
+    }
+
+    private void navigate(FragmentDestination destination) {
+        navigationManager.addFragment(destination, null, NavigationManager.ADD_TO_BACKSTACK,
+                CONTAINER);
+    }
+
+    public static class DetailFragment extends TestNavigationFragment {
+
+        public DetailFragment() {
+            super("detail");
+        }
+    }
+
+    public static class SingleFragment extends TestNavigationFragment {
+
+        public SingleFragment() {
+            super("single");
+            singleInstance = true;
+        }
+    }
+}
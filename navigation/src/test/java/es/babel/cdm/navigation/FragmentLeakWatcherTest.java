@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FragmentLeakWatcherTest {
+
+    private static final int CONTAINER = 1;
+
+    private NavigationManager navigationManager;
+    private FragmentLeakWatcher watcher;
+
+    /**
+     * Plays the part of a listener keeping a Fragment after it is destroyed
+     */
+    private TestNavigationFragment retained;
+
+    @Before
+    public void setUp() {
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(new InMemoryNavigationStack());
+        navigationManager.setLeakDetectionEnabled(true);
+        watcher = navigationManager.getFragmentLeakWatcher();
+        watcher.setCheckDelayMs(0);
+    }
+
+    @Test
+    public void poppedFragmentsAreCollected() {
+        navigate("fragment_0");
+        navigate("fragment_1");
+        navigate("fragment_2");
+
+        navigationManager.popBackStack(CONTAINER);
+        navigationManager.popBackStack(CONTAINER);
+
+        assertTrue(watcher.check().isEmpty());
+    }
+
+    @Test
+    public void retainedFragmentIsReportedWithItsTag() {
+        navigate("fragment_0");
+        retained = navigate("retained");
+
+        navigationManager.popBackStack(CONTAINER);
+        List<FragmentLeakWatcher.Leak> leaks = watcher.check();
+
+        assertEquals(1, leaks.size());
+        assertEquals("retained", leaks.get(0).getTag());
+        assertEquals(TestNavigationFragment.class.getName(), leaks.get(0).getClassName());
+
+        retained = null;
+
+        assertTrue(watcher.check().isEmpty());
+    }
+
+    @Test(expected = AssertionError.class)
+    public void fragmentRetainedAfterClearingTheBackStackFailsTheAssertion() {
+        navigate("fragment_0");
+        retained = navigate("retained");
+        navigate("fragment_2");
+
+        navigationManager.addFragment(new TestNavigationFragment("section"), "section", null,
+                NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK, CONTAINER);
+
+        watcher.assertNoLeaks();
+    }
+
+    private TestNavigationFragment navigate(String tag) {
+        TestNavigationFragment fragment = new TestNavigationFragment(tag);
+        navigationManager.addFragment(fragment, tag, null, NavigationManager.ADD_TO_BACKSTACK,
+                CONTAINER);
+        return fragment;
+    }
+}
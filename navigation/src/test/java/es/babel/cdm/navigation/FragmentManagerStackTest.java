@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.babel.cdm.navigation.interfaces.NavigationStack;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Transactions of the {@link FragmentManagerStack} over a mocked FragmentManager.
+ */
+public class FragmentManagerStackTest {
+
+    private FragmentTransaction first;
+    private FragmentTransaction second;
+    private FragmentManagerStack stack;
+
+    @Before
+    public void setUp() {
+        FragmentManager fm = mock(FragmentManager.class);
+        first = mock(FragmentTransaction.class);
+        second = mock(FragmentTransaction.class);
+        when(fm.beginTransaction()).thenReturn(first, second);
+        stack = new FragmentManagerStack(fm);
+    }
+
+    @Test
+    public void uncommittedTransactionDoesNotAffectTheNextOne() {
+        NavigationStack.Transaction abandoned = stack.beginTransaction();
+        NavigationStack.Transaction next = stack.beginTransaction();
+
+        next.addToBackStack("next").commit();
+
+        assertNotSame(abandoned, next);
+        assertSame(first, FragmentManagerStack.unwrap(abandoned));
+        assertSame(second, FragmentManagerStack.unwrap(next));
+        verify(second).commit();
+        verify(first, never()).commit();
+    }
+
+    @Test
+    public void committedTransactionStillUnwrapsToItsFragmentTransaction() {
+        NavigationStack.Transaction transaction = stack.beginTransaction();
+        transaction.commitAllowingStateLoss();
+
+        assertSame(first, FragmentManagerStack.unwrap(transaction));
+        verify(first).commitAllowingStateLoss();
+    }
+}
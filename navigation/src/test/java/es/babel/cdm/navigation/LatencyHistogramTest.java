@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void recordsInLogarithmicBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(MILLI / 2);
+        histogram.record(3 * MILLI);
+        histogram.record(3 * MILLI);
+        histogram.record(100000 * MILLI);
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(2, histogram.getBucketCount(2));
+        assertEquals(1, histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1));
+        assertEquals(100000 * MILLI, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void approximatesPercentilesWithBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5 * MILLI);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(40 * MILLI);
+        }
+
+        assertEquals(8 * MILLI, histogram.getPercentileNanos(50));
+        assertEquals(40 * MILLI, histogram.getPercentileNanos(99));
+    }
+}
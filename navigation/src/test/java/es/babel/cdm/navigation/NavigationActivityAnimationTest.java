@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Animations the NavigationActivity passes to the NavigationManager for every navigation.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class NavigationActivityAnimationTest {
+
+    private TestNavigationActivity activity;
+    private FragmentAnimation animation;
+    private final List<FragmentAnimation> animations = new ArrayList<FragmentAnimation>();
+
+    /**
+     * Navigation issued while the next navigation is being added, as a callback would do
+     */
+    private Navigation callback;
+
+    private interface Navigation {
+        void navigate() throws Exception;
+    }
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.setupActivity(TestNavigationActivity.class);
+        activity.sNavigationManager = new NavigationManager() {
+            @Override
+            public void addFragment(Fragment frag, String tag, FragmentAnimation animation,
+                                    int flags, int containerId) {
+                animations.add(animation);
+                if (callback != null) {
+                    Navigation navigation = callback;
+                    callback = null;
+                    try {
+                        navigation.navigate();
+                    } catch (Exception exception) {
+                        throw new AssertionError(exception);
+                    }
+                }
+            }
+        };
+        animation = activity.sAnimation;
+    }
+
+    @Test
+    public void inverseNavigationsUseTheGoBackAnimation() throws Exception {
+        activity.navigateDownInverse(new TestNavigationFragment("down"), true);
+        activity.navigateToSectionInverse(new TestNavigationFragment("section"));
+
+        assertEquals(2, animations.size());
+        assertSame(activity.sGoBackAnimation, animations.get(0));
+        assertSame(activity.sGoBackAnimation, animations.get(1));
+        assertSame(animation, activity.sAnimation);
+    }
+
+    @Test
+    public void navigationFromACallbackOfAnInverseNavigationKeepsItsAnimation() throws Exception {
+        callback = new Navigation() {
+            @Override
+            public void navigate() throws Exception {
+                activity.navigateDown(new TestNavigationFragment("callback"), true);
+            }
+        };
+
+        activity.navigateDownInverse(new TestNavigationFragment("inverse"), true);
+
+        assertEquals(2, animations.size());
+        assertSame(activity.sGoBackAnimation, animations.get(0));
+        assertSame(animation, animations.get(1));
+        assertSame(animation, activity.sAnimation);
+    }
+
+    @Test
+    public void inverseNavigationFromACallbackUsesTheGoBackAnimation() throws Exception {
+        callback = new Navigation() {
+            @Override
+            public void navigate() throws Exception {
+                activity.navigateDownInverse(new TestNavigationFragment("callback"), true);
+            }
+        };
+
+        activity.navigateDown(new TestNavigationFragment("down"), true);
+        activity.navigateDown(new TestNavigationFragment("after"), true);
+
+        assertEquals(3, animations.size());
+        assertSame(animation, animations.get(0));
+        assertSame(activity.sGoBackAnimation, animations.get(1));
+        assertSame(animation, animations.get(2));
+        assertSame(animation, activity.sAnimation);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NavigationManagerTest {
+
+    private static final int CONTAINER = 1;
+
+    private FakeFragmentManager fake;
+    private NavigationManager navigationManager;
+    private TestNavigationFragment[] stack;
+
+    @Before
+    public void setUp() {
+        fake = new FakeFragmentManager();
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(fake.fm);
+
+        stack = new TestNavigationFragment[6];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new TestNavigationFragment("fragment_" + i);
+            fake.push(stack[i]);
+        }
+    }
+
+    @Test
+    public void popBackStackLevelsUsesOneTransaction() {
+        navigationManager.popBackStackLevels(CONTAINER, 5);
+
+        assertEquals(1, fake.size());
+        verify(fake.fm, times(1)).popBackStackImmediate(anyInt(), anyInt());
+        verify(fake.fm).popBackStackImmediate(1, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+        verify(fake.fm, never()).popBackStackImmediate();
+        verify(fake.fm, never()).beginTransaction();
+    }
+
+    @Test
+    public void popBackStackLevelsOnlyNotifiesDestination() {
+        navigationManager.popBackStackLevels(CONTAINER, 5);
+
+        assertEquals(1, stack[0].visibleCount);
+        for (int i = 1; i < stack.length; i++) {
+            assertEquals(0, stack[i].visibleCount);
+        }
+    }
+
+    @Test
+    public void popBackStackLevelsWithOneLevelBehavesAsPopBackStack() {
+        navigationManager.popBackStackLevels(CONTAINER, 1);
+
+        assertEquals(5, fake.size());
+        verify(fake.fm, times(1)).popBackStackImmediate();
+        verify(fake.fm, never()).popBackStackImmediate(anyInt(), anyInt());
+        assertEquals(1, stack[4].visibleCount);
+    }
+
+    @Test
+    public void singleInstanceIsBroughtToFront() {
+        stack[2].singleInstance = true;
+        TestNavigationFragment duplicate = new TestNavigationFragment("fragment_2");
+        duplicate.singleInstance = true;
+        navigationManager.setBringSingleInstanceToFront(true);
+
+        navigationManager.addFragment(duplicate, "fragment_2", null,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+
+        assertEquals(3, fake.size());
+        verify(fake.fm, times(1)).popBackStackImmediate(anyString(), anyInt());
+        verify(fake.fm, never()).beginTransaction();
+        assertEquals(1, stack[2].visibleCount);
+        assertEquals(0, duplicate.visibleCount);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedTransactionHooksAreStillCalled() {
+        FragmentTransaction ft = mock(FragmentTransaction.class);
+        when(fake.fm.beginTransaction()).thenReturn(ft);
+        final FragmentTransaction[] configured = new FragmentTransaction[1];
+        navigationManager = new NavigationManager() {
+            @Override
+            protected void configureAdditionMode(Fragment frag, int flags, FragmentTransaction ft,
+                                                 int containerId) {
+                configured[0] = ft;
+            }
+        };
+        navigationManager.initialize(fake.fm);
+
+        navigationManager.addFragment(new TestNavigationFragment("new"), "new", null,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+
+        assertSame(ft, configured[0]);
+        verify(ft).addToBackStack("new");
+        verify(ft).commitAllowingStateLoss();
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.content.ComponentCallbacks2;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Navigation rules of the NavigationManager running on an {@link InMemoryNavigationStack}.
+ */
+public class NavigationRulesTest {
+
+    private static final int CONTAINER = 1;
+
+    private InMemoryNavigationStack stack;
+    private NavigationManager navigationManager;
+
+    @Before
+    public void setUp() {
+        stack = new InMemoryNavigationStack();
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(stack);
+    }
+
+    @Test
+    public void navigateDownStacksFragments() {
+        TestNavigationFragment[] fragments = navigate(3);
+
+        assertEquals(3, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[2], navigationManager.getLastFragmentOfStack());
+        assertSame(fragments[2], stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void sectionClearsBackStack() {
+        navigate(3);
+        TestNavigationFragment section = new TestNavigationFragment("section");
+
+        add(section, NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK);
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertSame(section, navigationManager.getLastFragmentOfStack());
+        assertEquals(1, stack.getAddedFragments().size());
+    }
+
+    @Test
+    public void singleInstanceInBackStackIsNotAddedAgain() {
+        TestNavigationFragment[] fragments = navigate(3);
+        fragments[1].singleInstance = true;
+        TestNavigationFragment duplicate = new TestNavigationFragment("fragment_1");
+        duplicate.singleInstance = true;
+
+        add(duplicate, NavigationManager.ADD_TO_BACKSTACK);
+
+        assertEquals(3, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[2], navigationManager.getLastFragmentOfStack());
+    }
+
+    @Test
+    public void singleInstanceInBackStackIsBroughtToFront() {
+        TestNavigationFragment[] fragments = navigate(3);
+        TestNavigationFragment duplicate = new TestNavigationFragment("fragment_0");
+        duplicate.singleInstance = true;
+        navigationManager.setBringSingleInstanceToFront(true);
+
+        add(duplicate, NavigationManager.ADD_TO_BACKSTACK);
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[0], navigationManager.getLastFragmentOfStack());
+        assertEquals(1, fragments[0].visibleCount);
+    }
+
+    @Test
+    public void backGoesToPreviousFragment() {
+        TestNavigationFragment[] fragments = navigate(3);
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(2, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[1], navigationManager.getLastFragmentOfStack());
+        assertEquals(1, fragments[1].visibleCount);
+    }
+
+    @Test
+    public void backTargetPopsUntilTarget() {
+        TestNavigationFragment[] fragments = navigate(4);
+        fragments[3].backTarget = "fragment_1";
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(2, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[1], stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void entryFragmentLetsActivityFinish() {
+        TestNavigationFragment[] fragments = navigate(3);
+        assertFalse(navigationManager.canActivityFinish());
+
+        fragments[2].entryFragment = true;
+
+        assertTrue(navigationManager.canActivityFinish());
+    }
+
+    @Test
+    public void firstEntryIsTheRootWithoutInitialFragment() {
+        navigate(1);
+        assertTrue(navigationManager.canActivityFinish());
+
+        navigate(1);
+        assertFalse(navigationManager.canActivityFinish());
+    }
+
+    @Test
+    public void initialFragmentIsTheRootWithoutEntry() {
+        navigationManager.setInitialFragment(new TestNavigationFragment("root"), "root", CONTAINER);
+        assertTrue(navigationManager.canActivityFinish());
+
+        navigate(1);
+        assertFalse(navigationManager.canActivityFinish());
+
+        navigationManager.popBackStack(CONTAINER);
+        assertTrue(navigationManager.canActivityFinish());
+    }
+
+    @Test
+    public void addingOnTopKeepsCoveredFragment() {
+        TestNavigationFragment[] fragments = navigate(1);
+        TestNavigationFragment dialog = new TestNavigationFragment("dialog");
+        navigationManager.setHideCoveredFragments(true);
+
+        add(dialog, NavigationManager.ADD_TO_BACKSTACK | NavigationManager.DO_NOT_REPLACE_FRAGMENT);
+
+        assertEquals(2, stack.getAddedFragments().size());
+        assertTrue(stack.isHidden(fragments[0]));
+        assertEquals(1, fragments[0].notVisibleCount);
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertFalse(stack.isHidden(fragments[0]));
+        assertSame(fragments[0], stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void liveViewPolicyDetachesTheFragmentsOverTheLimit() {
+        navigationManager.setMaxLiveViews(2);
+
+        TestNavigationFragment[] fragments = navigateOnTop(4);
+
+        assertTrue(stack.isDetached(fragments[0]));
+        assertTrue(stack.isDetached(fragments[1]));
+        assertFalse(stack.isDetached(fragments[2]));
+        assertFalse(stack.isDetached(fragments[3]));
+        assertEquals(2, navigationManager.getViewEvictionCount());
+    }
+
+    @Test
+    public void liveViewPolicyAttachesAgainOnPop() {
+        navigationManager.setMaxLiveViews(2);
+        TestNavigationFragment[] fragments = navigateOnTop(4);
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertFalse(stack.isDetached(fragments[1]));
+        assertTrue(stack.isDetached(fragments[0]));
+        assertFalse(stack.getAddedFragments().contains(fragments[3]));
+    }
+
+    @Test
+    public void initialFragmentIsInstalledWithoutBackStackEntry() {
+        TestNavigationFragment root = new TestNavigationFragment("root");
+
+        navigationManager.setInitialFragment(root, "root", CONTAINER);
+
+        assertEquals(0, navigationManager.getBackStackEntryCount());
+        assertSame(root, stack.findFragmentById(CONTAINER));
+        assertSame(root, navigationManager.getLastFragmentOfStack());
+
+        navigate(1);
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(0, navigationManager.getBackStackEntryCount());
+        assertSame(root, stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void rebindMirrorsTheNewStackAndKeepsTheConfiguration() {
+        navigate(3);
+        navigationManager.setBringSingleInstanceToFront(true);
+        NavigationMetrics metrics = navigationManager.getNavigationMetrics();
+
+        stack = new InMemoryNavigationStack();
+        navigationManager.rebind(stack);
+        TestNavigationFragment[] fragments = navigate(2);
+        fragments[0].singleInstance = true;
+        TestNavigationFragment duplicate = new TestNavigationFragment("fragment_0");
+        duplicate.singleInstance = true;
+        add(duplicate, NavigationManager.ADD_TO_BACKSTACK);
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[0], navigationManager.getLastFragmentOfStack());
+        assertSame(metrics, navigationManager.getNavigationMetrics());
+    }
+
+    @Test
+    public void rebindStopsListeningToThePreviousStack() {
+        navigate(1);
+        InMemoryNavigationStack previous = stack;
+
+        stack = new InMemoryNavigationStack();
+        navigationManager.rebind(stack);
+        TestNavigationFragment late = new TestNavigationFragment("late");
+        previous.beginTransaction().replace(CONTAINER, late, "late").addToBackStack("late")
+                .commit();
+
+        assertEquals(0, navigationManager.getBackStackEntryCount());
+        assertNull(navigationManager.getLastFragmentOfStack());
+    }
+
+    @Test
+    public void multiLevelPopLetsCustomizedBackHandleEveryLevel() {
+        TestNavigationFragment[] fragments = navigate(3);
+        fragments[2].customizedBack = true;
+
+        navigationManager.popBackStackLevels(CONTAINER, 2);
+
+        assertEquals(3, navigationManager.getBackStackEntryCount());
+        assertEquals(2, fragments[2].backPressedCount);
+    }
+
+    @Test
+    public void multiLevelPopFollowsBackTargetOfIntermediateFragment() {
+        TestNavigationFragment[] fragments = navigate(4);
+        fragments[2].backTarget = "fragment_0";
+
+        navigationManager.popBackStackLevels(CONTAINER, 2);
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[0], stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void multiLevelPopRemovesFragmentOutsideTheBackStack() {
+        TestNavigationFragment[] fragments = navigate(3);
+        TestNavigationFragment floating = new TestNavigationFragment("floating");
+        add(floating, NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
+
+        navigationManager.popBackStackLevels(CONTAINER, 2);
+
+        assertEquals(2, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[1], stack.findFragmentById(CONTAINER));
+        assertFalse(stack.getAddedFragments().contains(floating));
+    }
+
+    @Test
+    public void singleInstanceOnScreenWithoutBackStackEntryIsNotAddedAgain() {
+        navigate(1);
+        TestNavigationFragment onScreen = new TestNavigationFragment("single");
+        onScreen.singleInstance = true;
+        add(onScreen, NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
+        TestNavigationFragment duplicate = new TestNavigationFragment("single");
+        duplicate.singleInstance = true;
+
+        add(duplicate, NavigationManager.ADD_TO_BACKSTACK);
+
+        assertEquals(1, navigationManager.getBackStackEntryCount());
+        assertSame(onScreen, stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void navigateDownThenUpInTheSameFrameRunInOrder() {
+        navigationManager.setCoalesceTransactions(true);
+        TestNavigationFragment[] fragments = navigate(3);
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(2, navigationManager.getBackStackEntryCount());
+        assertSame(fragments[1], stack.findFragmentById(CONTAINER));
+    }
+
+    @Test
+    public void singleInstanceQueuedTwiceInTheSameFrameIsAddedOnce() {
+        navigationManager.setCoalesceTransactions(true);
+        navigate(1);
+        TestNavigationFragment single = new TestNavigationFragment("single");
+        single.singleInstance = true;
+        add(single, NavigationManager.ADD_TO_BACKSTACK);
+        add(new TestNavigationFragment("other"), NavigationManager.ADD_TO_BACKSTACK);
+        TestNavigationFragment duplicate = new TestNavigationFragment("single");
+        duplicate.singleInstance = true;
+
+        add(duplicate, NavigationManager.ADD_TO_BACKSTACK);
+
+        assertEquals(3, navigationManager.getBackStackEntryCount());
+    }
+
+    @Test
+    public void trimMemoryNotifiesTheFragmentsOfTheBackStack() {
+        TestNavigationFragment[] fragments = navigate(3);
+
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        for (TestNavigationFragment fragment : fragments) {
+            assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, fragment.trimLevel);
+        }
+    }
+
+    @Test
+    public void trimMemoryShedsViewsOnlyUnderPressure() {
+        final int[] kept = {-1};
+        navigationManager = new NavigationManager() {
+            @Override
+            protected void shedOffScreenViews(int keep) {
+                kept[0] = keep;
+            }
+        };
+        navigationManager.initialize(stack);
+        navigationManager.setShedViewsOnTrimMemory(true);
+        navigate(3);
+
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(-1, kept[0]);
+
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(2, kept[0]);
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(1, kept[0]);
+    }
+
+    @Test
+    public void trimMemoryKeepsTheViewsByDefault() {
+        TestNavigationFragment[] fragments = navigateOnTop(3);
+
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertFalse(stack.isDetached(fragments[0]));
+        assertFalse(stack.isDetached(fragments[1]));
+        assertEquals(0, navigationManager.getShedViewCount());
+        assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, fragments[0].trimLevel);
+    }
+
+    @Test
+    public void shedViewsAreAttachedAgainWhenBackOnTop() {
+        navigationManager.setShedViewsOnTrimMemory(true);
+        TestNavigationFragment[] fragments = navigateOnTop(4);
+
+        navigationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertTrue(stack.isDetached(fragments[0]));
+        assertTrue(stack.isDetached(fragments[1]));
+        assertFalse(stack.isDetached(fragments[2]));
+        assertFalse(stack.isDetached(fragments[3]));
+        assertEquals(2, navigationManager.getShedViewCount());
+        assertEquals(0, navigationManager.getViewEvictionCount());
+
+        navigationManager.popBackStack(CONTAINER);
+        assertTrue(stack.isDetached(fragments[1]));
+
+        navigationManager.popBackStack(CONTAINER);
+        assertFalse(stack.isDetached(fragments[1]));
+        assertTrue(stack.isDetached(fragments[0]));
+    }
+
+    @Test
+    public void atomicSectionSwitchOnlyOptimizesSectionChanges() {
+        navigationManager.setAtomicSectionSwitch(true);
+        navigate(2);
+
+        assertEquals(0, stack.getOptimizedCommitCount());
+
+        add(new TestNavigationFragment("section"),
+                NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK);
+
+        assertEquals(1, stack.getOptimizedCommitCount());
+    }
+
+    @Test
+    public void clearContainerRemovesTheWholeStack() {
+        navigateOnTop(3);
+        add(new TestNavigationFragment("on_screen"), NavigationManager.DO_NOT_ADD_TO_BACKSTACK);
+
+        navigationManager.clearContainer(CONTAINER);
+
+        assertEquals(0, navigationManager.getBackStackEntryCount());
+        assertEquals(0, stack.getAddedFragments().size());
+        assertNull(stack.findFragmentById(CONTAINER));
+    }
+
+    private TestNavigationFragment[] navigate(int count) {
+        TestNavigationFragment[] fragments = new TestNavigationFragment[count];
+        for (int i = 0; i < count; i++) {
+            fragments[i] = new TestNavigationFragment("fragment_" + i);
+            add(fragments[i], NavigationManager.ADD_TO_BACKSTACK);
+        }
+        return fragments;
+    }
+
+    /**
+     * Adds Fragments with a view on top of each other, without replacing the covered ones.
+     */
+    private TestNavigationFragment[] navigateOnTop(int count) {
+        TestNavigationFragment[] fragments = new TestNavigationFragment[count];
+        for (int i = 0; i < count; i++) {
+            fragments[i] = new TestNavigationFragment("fragment_" + i);
+            fragments[i].view = mock(View.class);
+            add(fragments[i], NavigationManager.ADD_TO_BACKSTACK
+                    | NavigationManager.DO_NOT_REPLACE_FRAGMENT);
+        }
+        return fragments;
+    }
+
+    private void add(TestNavigationFragment fragment, int flags) {
+        navigationManager.addFragment(fragment, fragment.getFragmentTag(), null, flags, CONTAINER);
+    }
+}
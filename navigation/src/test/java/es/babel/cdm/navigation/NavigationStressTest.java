@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.FragmentManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Stress and soak harness for the navigation.
+ * <p/>
+ * It first navigates down to a deep backstack and back to the root, timing every navigation
+ * against the depth it happened at. Then, when enabled, a soak phase runs a random sequence of
+ * navigateDown, navigateUp, navigateToSection and single instance navigations. While running it
+ * samples the retained heap and the Fragments that are still reachable after being destroyed,
+ * through the {@link FragmentLeakWatcher}, and fails if any Fragment has leaked. The report is
+ * written to <code>build/stress-report.txt</code>.
+ * <p/>
+ * By default it only runs a short deep phase. It can be tuned with these system properties:
+ * <ul>
+ * <li><code>navigation.stress.depth</code>: depth of the deep phase (default 200)</li>
+ * <li><code>navigation.stress.soak</code>: runs the soak phase when true</li>
+ * <li><code>navigation.stress.operations</code>: random operations of the soak phase (default
+ * 1000)</li>
+ * <li><code>navigation.stress.minutes</code>: runs the soak phase for this long instead</li>
+ * <li><code>navigation.stress.seed</code>: seed of the random sequence (default
+ * {@value #DEFAULT_SEED})</li>
+ * </ul>
+ * For example: <code>./gradlew :navigation:testDebugUnitTest --tests '*NavigationStressTest'
+ * -Dnavigation.stress.depth=5000 -Dnavigation.stress.soak=true
+ * -Dnavigation.stress.minutes=60</code>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class NavigationStressTest {
+
+    private static final int SINGLE_INSTANCES = 4;
+    private static final int SAMPLE_EVERY = 250;
+    private static final long DEFAULT_SEED = 42L;
+
+    private static final int DOWN = 0;
+    private static final int UP = 1;
+    private static final int SECTION = 2;
+    private static final int SINGLE_INSTANCE = 3;
+    private static final String[] OPERATION_NAMES = {
+            "navigateDown", "navigateUp", "navigateToSection", "singleInstance"};
+
+    private TestNavigationActivity activity;
+    private FragmentManager fm;
+    private FragmentLeakWatcher leakWatcher;
+    private final List<Sample> samples = new ArrayList<Sample>();
+    private int nextFragment = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        activity = Robolectric.setupActivity(TestNavigationActivity.class);
+        activity.config().setBringSingleInstanceToFront(true).setLeakDetectionEnabled(true);
+        leakWatcher = activity.sNavigationManager.getFragmentLeakWatcher();
+        leakWatcher.setCheckDelayMs(0);
+        fm = activity.getSupportFragmentManager();
+        navigate(DOWN, null);
+    }
+
+    @Test
+    public void stress() throws Exception {
+        int depth = Integer.getInteger("navigation.stress.depth", 200);
+        int operations = Integer.getInteger("navigation.stress.operations", 1000);
+        long minutes = Long.getLong("navigation.stress.minutes", 0L);
+        long seed = Long.getLong("navigation.stress.seed", DEFAULT_SEED);
+        boolean soak = Boolean.getBoolean("navigation.stress.soak");
+
+        StringWriter report = new StringWriter();
+        PrintWriter out = new PrintWriter(report);
+        out.println("Navigation stress: depth=" + depth + " soak=" + soak + " operations="
+                + operations + " minutes=" + minutes + " seed=" + seed);
+
+        deepPhase(depth, out);
+        if (soak) {
+            soakPhase(new Random(seed), operations, minutes, out);
+        }
+
+        sample(0);
+        Sample last = samples.get(samples.size() - 1);
+        out.println();
+        out.println("ops\tdepth\theapKB\tleaked");
+        for (Sample sample : samples) {
+            out.println(sample.operations + "\t" + sample.depth + "\t" + sample.heapBytes / 1024
+                    + "\t" + sample.leakedFragments);
+        }
+        out.flush();
+        writeReport(report.toString());
+
+        assertEquals("Leaked Fragments: " + leakWatcher.check() + ", seed " + seed,
+                0, last.leakedFragments);
+    }
+
+    /**
+     * Navigates down to the given depth and back, reporting the time per navigation for every
+     * power of two of depth.
+     */
+    private void deepPhase(int depth, PrintWriter out) throws Exception {
+        int buckets = 32 - Integer.numberOfLeadingZeros(depth);
+        LatencyHistogram[] down = newHistograms(buckets);
+        LatencyHistogram[] up = newHistograms(buckets);
+
+        while (fm.getBackStackEntryCount() < depth) {
+            int current = fm.getBackStackEntryCount();
+            down[depthBucket(current)].record(navigate(DOWN, null));
+        }
+        sample(0);
+        while (fm.getBackStackEntryCount() > 1) {
+            int current = fm.getBackStackEntryCount();
+            up[depthBucket(current)].record(navigate(UP, null));
+        }
+        assertEquals(1, fm.getBackStackEntryCount());
+
+        out.println();
+        out.println("depth\tdownMeanUs\tdownMaxUs\tupMeanUs\tupMaxUs");
+        for (int i = 0; i < buckets; i++) {
+            out.println("<" + (1 << (i + 1)) + "\t" + micros(down[i].getMeanNanos()) + "\t"
+                    + micros(down[i].getMaxNanos()) + "\t" + micros(up[i].getMeanNanos()) + "\t"
+                    + micros(up[i].getMaxNanos()));
+        }
+    }
+
+    /**
+     * Runs random navigations, reporting the time per kind of navigation.
+     */
+    private void soakPhase(Random random, int operations, long minutes, PrintWriter out)
+            throws Exception {
+        LatencyHistogram[] latencies = newHistograms(OPERATION_NAMES.length);
+        long end = System.nanoTime() + minutes * 60L * 1000000000L;
+
+        for (int i = 1; minutes > 0 ? System.nanoTime() < end : i <= operations; i++) {
+            int operation = pickOperation(random);
+            String singleInstance = "single_" + random.nextInt(SINGLE_INSTANCES);
+            latencies[operation].record(navigate(operation, singleInstance));
+            if (i % SAMPLE_EVERY == 0) {
+                sample(i);
+            }
+        }
+
+        out.println();
+        out.println("operation\tcount\tmeanUs\tp99Us\tmaxUs");
+        for (int i = 0; i < OPERATION_NAMES.length; i++) {
+            out.println(OPERATION_NAMES[i] + "\t" + latencies[i].getCount() + "\t"
+                    + micros(latencies[i].getMeanNanos()) + "\t"
+                    + micros(latencies[i].getPercentileNanos(99)) + "\t"
+                    + micros(latencies[i].getMaxNanos()));
+        }
+    }
+
+    private int pickOperation(Random random) {
+        int dice = random.nextInt(100);
+        if (dice < 2) {
+            return SECTION;
+        } else if (dice < 15) {
+            return SINGLE_INSTANCE;
+        } else if (dice < 60 || fm.getBackStackEntryCount() <= 1) {
+            return DOWN;
+        }
+        return UP;
+    }
+
+    /**
+     * Runs a navigation and executes the work it posted.
+     *
+     * @return Time spent in nanoseconds
+     */
+    private long navigate(int operation, String singleInstanceTag) throws Exception {
+        TestNavigationFragment fragment = null;
+        if (operation != UP) {
+            fragment = new TestNavigationFragment(operation == SINGLE_INSTANCE
+                    ? singleInstanceTag : "fragment_" + nextFragment++);
+            fragment.singleInstance = operation == SINGLE_INSTANCE;
+        }
+
+        long start = System.nanoTime();
+        switch (operation) {
+            case UP:
+                activity.navigateUp();
+                break;
+            case SECTION:
+                activity.navigateToSection(fragment);
+                break;
+            default:
+                activity.navigateDown(fragment, true);
+                break;
+        }
+        fm.executePendingTransactions();
+        Robolectric.flushForegroundThreadScheduler();
+        return System.nanoTime() - start;
+    }
+
+    private void sample(int operations) {
+        // Checking the leaks collects the garbage first
+        int leaked = leakWatcher.check().size();
+        Runtime runtime = Runtime.getRuntime();
+        samples.add(new Sample(operations, fm.getBackStackEntryCount(),
+                runtime.totalMemory() - runtime.freeMemory(), leaked));
+    }
+
+    private void writeReport(String report) throws IOException {
+        File file = new File("build", "stress-report.txt");
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static LatencyHistogram[] newHistograms(int count) {
+        LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private static int depthBucket(int depth) {
+        return depth <= 1 ? 0 : 31 - Integer.numberOfLeadingZeros(depth);
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    /**
+     * State of the heap and the Fragments at a point of the run
+     */
+    private static class Sample {
+
+        final int operations;
+        final int depth;
+        final long heapBytes;
+        final int leakedFragments;
+
+        Sample(int operations, int depth, long heapBytes, int leakedFragments) {
+            this.operations = operations;
+            this.depth = depth;
+            this.heapBytes = heapBytes;
+            this.leakedFragments = leakedFragments;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pairing of the {@link NavigationTrace} sections emitted by the navigation.
+ */
+public class NavigationTraceTest {
+
+    private static final int CONTAINER = 1;
+
+    private final RecordingSink sink = new RecordingSink();
+    private NavigationManager navigationManager;
+
+    @Before
+    public void setUp() {
+        NavigationTrace.setSink(sink);
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(new InMemoryNavigationStack());
+    }
+
+    @After
+    public void tearDown() {
+        NavigationTrace.setEnabled(false);
+        NavigationTrace.setSink(null);
+    }
+
+    @Test
+    public void navigationSectionsArePairedWhileTracing() {
+        NavigationTrace.setEnabled(true);
+
+        navigate();
+
+        assertTrue(sink.sections.size() > 0);
+        assertEquals(sink.sections.size(), sink.ends);
+        assertEquals(0, sink.depth);
+        assertTrue(sink.sections.get(0).startsWith(NavigationTrace.ADD_FRAGMENT + " fragment_0"));
+    }
+
+    @Test
+    public void noSectionIsEmittedWithoutTracing() {
+        navigate();
+
+        assertFalse(NavigationTrace.isEnabled());
+        assertEquals(0, sink.sections.size());
+        assertEquals(0, sink.ends);
+    }
+
+    @Test
+    public void disablingInsideASectionStillClosesIt() {
+        NavigationTrace.setEnabled(true);
+        boolean opened = NavigationTrace.begin(NavigationTrace.FLUSH);
+
+        NavigationTrace.setEnabled(false);
+        NavigationTrace.end(opened);
+
+        assertEquals(1, sink.sections.size());
+        assertEquals(0, sink.depth);
+    }
+
+    @Test
+    public void enablingInsideASectionDoesNotCloseIt() {
+        boolean opened = NavigationTrace.begin(NavigationTrace.FLUSH);
+
+        NavigationTrace.setEnabled(true);
+        NavigationTrace.end(opened);
+
+        assertEquals(0, sink.sections.size());
+        assertEquals(0, sink.ends);
+    }
+
+    private void navigate() {
+        for (int i = 0; i < 3; i++) {
+            TestNavigationFragment fragment = new TestNavigationFragment("fragment_" + i);
+            navigationManager.addFragment(fragment, fragment.getFragmentTag(), null,
+                    NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+        }
+        navigationManager.popBackStack(CONTAINER);
+        navigationManager.popBackStackLevels(CONTAINER, 2);
+        TestNavigationFragment section = new TestNavigationFragment("section");
+        navigationManager.addFragment(section, section.getFragmentTag(), null,
+                NavigationManager.ADD_TO_BACKSTACK | NavigationManager.CLEAR_BACKSTACK, CONTAINER);
+    }
+
+    private static class RecordingSink implements NavigationTrace.Sink {
+
+        final List<String> sections = new ArrayList<String>();
+        int ends = 0;
+        int depth = 0;
+
+        @Override
+        public void beginSection(String name) {
+            sections.add(name);
+            depth++;
+        }
+
+        @Override
+        public void endSection() {
+            assertTrue("Section closed without being opened", depth > 0);
+            ends++;
+            depth--;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.view.View;
+
+import es.babel.cdm.navigation.interfaces.NavigationFragment;
+import es.babel.cdm.navigation.interfaces.TrimMemoryAwareFragment;
+
+/**
+ * NavigationFragment that counts the navigation callbacks it receives.
+ */
+public class TestNavigationFragment extends Fragment
+        implements NavigationFragment, TrimMemoryAwareFragment {
+
+    private final String tag;
+
+    boolean singleInstance;
+    boolean entryFragment;
+    boolean customizedBack;
+    String backTarget;
+
+    int visibleCount;
+    int notVisibleCount;
+    int backPressedCount;
+    int trimLevel = -1;
+
+    /**
+     * View returned as if it had been inflated, null for none
+     */
+    View view;
+
+    public TestNavigationFragment(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public View getView() {
+        return view;
+    }
+
+    @Override
+    public boolean customizedOnBackPressed() {
+        return customizedBack;
+    }
+
+    @Override
+    public String getFragmentTag() {
+        return tag;
+    }
+
+    @Override
+    public boolean isEntryFragment() {
+        return entryFragment;
+    }
+
+    @Override
+    public boolean isSingleInstance() {
+        return singleInstance;
+    }
+
+    @Override
+    public void onFragmentVisible() {
+        visibleCount++;
+    }
+
+    @Override
+    public void onFragmentNotVisible() {
+        notVisibleCount++;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trimLevel = level;
+    }
+
+    @Override
+    public void onBackPressed() {
+        backPressedCount++;
+    }
+
+    @Override
+    public String onBackPressedTarget() {
+        return backTarget;
+    }
+}
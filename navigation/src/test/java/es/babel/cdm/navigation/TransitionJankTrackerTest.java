@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.view.View;
+import android.view.animation.Animation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.babel.cdm.navigation.interfaces.OnTransitionJankListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Frame statistics of the {@link TransitionJankTracker}, driven with explicit frame times.
+ */
+public class TransitionJankTrackerTest {
+
+    private static final long START = 1000000000L;
+    private static final long FRAME = TransitionJankTracker.DEFAULT_FRAME_INTERVAL_NANOS;
+    private static final int ENTER = 1;
+    private static final int EXIT = 2;
+
+    private NavigationManager navigationManager;
+    private TransitionJankTracker tracker;
+    private final List<long[]> measured = new ArrayList<long[]>();
+
+    @Before
+    public void setUp() {
+        navigationManager = new NavigationManager();
+        navigationManager.initialize(new InMemoryNavigationStack());
+        navigationManager.setTransitionJankTrackingEnabled(true);
+        navigationManager.setOnTransitionJankListener(new OnTransitionJankListener() {
+            @Override
+            public void onTransitionMeasured(String tag, int enterAnim, int exitAnim, int frames,
+                                             int droppedFrames, long worstFrameNanos) {
+                measured.add(new long[]{enterAnim, exitAnim, frames, droppedFrames,
+                        worstFrameNanos});
+            }
+        });
+        tracker = navigationManager.getTransitionJankTracker();
+    }
+
+    @Test
+    public void smoothTransitionDropsNoFrame() {
+        TestNavigationFragment fragment = new TestNavigationFragment("detail");
+        tracker.onCommitted(fragment, "detail", new FragmentAnimation(ENTER, EXIT));
+        tracker.onFragmentViewCreated(null, fragment, mock(View.class), null);
+
+        tracker.doFrame(START);
+        tracker.doFrame(START + FRAME);
+
+        assertEquals(1, measured.size());
+        assertEquals(1, measured.get(0)[2]);
+        assertEquals(0, measured.get(0)[3]);
+        TransitionJankStats stats = tracker.getStatsForTag("detail");
+        assertEquals(1, stats.getTransitions());
+        assertEquals(0, stats.getJankyTransitions());
+    }
+
+    @Test
+    public void longFrameCountsTheMissedFrames() {
+        TestNavigationFragment fragment = new TestNavigationFragment("detail");
+        tracker.onCommitted(fragment, "detail", new FragmentAnimation(ENTER, EXIT));
+        tracker.onFragmentViewCreated(null, fragment, animatingView(2), null);
+
+        tracker.doFrame(START);
+        tracker.doFrame(START + FRAME);
+        tracker.doFrame(START + FRAME + 3 * FRAME);
+        assertEquals(0, measured.size());
+        tracker.doFrame(START + 5 * FRAME);
+
+        assertEquals(1, measured.size());
+        long[] transition = measured.get(0);
+        assertEquals(ENTER, transition[0]);
+        assertEquals(EXIT, transition[1]);
+        assertEquals(3, transition[2]);
+        assertEquals(2, transition[3]);
+        assertEquals(3 * FRAME, transition[4]);
+        assertEquals(1, tracker.getStatsForEnterAnim(ENTER).getJankyTransitions());
+        assertEquals(2, tracker.getStatsForExitAnim(EXIT).getDroppedFrames());
+    }
+
+    @Test
+    public void transitionWithoutAnimationIsNotTracked() {
+        TestNavigationFragment fragment = new TestNavigationFragment("detail");
+        tracker.onCommitted(fragment, "detail", null);
+        tracker.onFragmentViewCreated(null, fragment, mock(View.class), null);
+
+        tracker.doFrame(START);
+        tracker.doFrame(START + FRAME);
+
+        assertEquals(0, measured.size());
+        assertNull(tracker.getStatsForTag("detail"));
+    }
+
+    @Test
+    public void destroyedViewEndsTheTransition() {
+        TestNavigationFragment fragment = new TestNavigationFragment("detail");
+        tracker.onCommitted(fragment, "detail", new FragmentAnimation(ENTER, EXIT));
+        tracker.onFragmentViewCreated(null, fragment, animatingView(10), null);
+        tracker.doFrame(START);
+        tracker.doFrame(START + FRAME);
+
+        tracker.onFragmentViewDestroyed(null, fragment);
+
+        assertEquals(1, measured.size());
+        assertEquals(1, measured.get(0)[2]);
+    }
+
+    /**
+     * View whose animation is still running the first given number of times it is checked.
+     */
+    private static View animatingView(int checks) {
+        Animation animation = mock(Animation.class);
+        Boolean[] ended = new Boolean[checks];
+        for (int i = 0; i < checks; i++) {
+            ended[i] = i == checks - 1;
+        }
+        when(animation.hasEnded()).thenReturn(false, ended);
+        View view = mock(View.class);
+        when(view.getAnimation()).thenReturn(animation);
+        return view;
+    }
+}
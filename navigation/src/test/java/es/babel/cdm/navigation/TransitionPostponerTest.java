@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import es.babel.cdm.navigation.interfaces.OnPostponedTransitionListener;
+import es.babel.cdm.navigation.interfaces.PostponedTransitionFragment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TransitionPostponerTest {
+
+    private static final int CONTAINER = 1;
+    private static final long TIMEOUT_MS = 300;
+
+    private TransitionPostponer postponer;
+    private FragmentAnimation sharedElementAnimation;
+
+    private int started;
+    private boolean lastTimedOut;
+
+    @Before
+    public void setUp() {
+        postponer = new TransitionPostponer();
+        postponer.setTimeoutMs(TIMEOUT_MS);
+        postponer.setListener(new OnPostponedTransitionListener() {
+            @Override
+            public void onPostponedTransitionStarted(String tag, long waitNanos, boolean timedOut) {
+                started++;
+                lastTimedOut = timedOut;
+            }
+        });
+        sharedElementAnimation = new FragmentAnimation(R.anim.fade_in, R.anim.fade_out,
+                new LollipopAnim[]{new LollipopAnim(new View(RuntimeEnvironment.application), "image")});
+    }
+
+    @Test
+    public void transitionStartsWhenDestinationIsReady() {
+        PostponedFragment fragment = navigate();
+
+        postponer.onReady(fragment);
+
+        assertEquals(1, started);
+        assertFalse(lastTimedOut);
+        assertEquals(1, postponer.getPostponedCount());
+        assertEquals(0, postponer.getTimeoutCount());
+    }
+
+    @Test
+    public void transitionStartsAfterTimeout() {
+        PostponedFragment fragment = navigate();
+
+        ShadowLooper.idleMainLooper(TIMEOUT_MS);
+        postponer.onReady(fragment);
+
+        assertEquals(1, started);
+        assertTrue(lastTimedOut);
+        assertEquals(1, postponer.getTimeoutCount());
+    }
+
+    @Test
+    public void transitionWithoutSharedElementsIsNotPostponed() {
+        PostponedFragment fragment = new PostponedFragment();
+
+        assertFalse(postponer.shouldPostpone(fragment, AnimationPresets.FADE));
+        assertTrue(postponer.shouldPostpone(fragment, sharedElementAnimation));
+    }
+
+    @Test
+    public void postponedNavigationAllowsOptimization() {
+        InMemoryNavigationStack stack = new InMemoryNavigationStack();
+        NavigationManager navigationManager = new NavigationManager();
+        navigationManager.initialize(stack);
+        navigationManager.addFragment(new TestNavigationFragment("root"), "root", null,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+        assertEquals(0, stack.getOptimizedCommitCount());
+
+        PostponedFragment fragment = new PostponedFragment();
+        navigationManager.addFragment(fragment, fragment.getFragmentTag(), sharedElementAnimation,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+
+        assertEquals(1, stack.getOptimizedCommitCount());
+    }
+
+    @Test
+    public void destinationDestroyedWithoutViewIsForgotten() {
+        InMemoryNavigationStack stack = new InMemoryNavigationStack();
+        NavigationManager navigationManager = new NavigationManager();
+        navigationManager.initialize(stack);
+        navigationManager.addFragment(new TestNavigationFragment("root"), "root", null,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+        PostponedFragment fragment = new PostponedFragment();
+        navigationManager.addFragment(fragment, fragment.getFragmentTag(), sharedElementAnimation,
+                NavigationManager.ADD_TO_BACKSTACK, CONTAINER);
+        TransitionPostponer navigationPostponer = navigationManager.getTransitionPostponer();
+        assertEquals(1, navigationPostponer.getWaitingCount());
+
+        navigationManager.popBackStack(CONTAINER);
+
+        assertEquals(0, navigationPostponer.getWaitingCount());
+        assertEquals(0, navigationPostponer.getPostponedCount());
+    }
+
+    private PostponedFragment navigate() {
+        PostponedFragment fragment = new PostponedFragment();
+        postponer.onCommitted(fragment, fragment.getFragmentTag(), sharedElementAnimation);
+        postponer.onFragmentViewCreated(null, fragment, null, null);
+        return fragment;
+    }
+
+    public static class PostponedFragment extends TestNavigationFragment
+            implements PostponedTransitionFragment {
+
+        public PostponedFragment() {
+            super("postponed");
+        }
+
+        @Override
+        public boolean shouldPostponeTransition() {
+            return true;
+        }
+    }
+}
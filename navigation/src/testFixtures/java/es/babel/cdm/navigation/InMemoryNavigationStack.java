@@ -0,0 +1,626 @@
+/*
+ * Copyright (c) 2016. Babel sistemas de información.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package es.babel.cdm.navigation;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.WeakHashMap;
+
+import es.babel.cdm.navigation.interfaces.NavigationStack;
+
+/**
+ * {@link NavigationStack} kept in memory, without a FragmentManager or any view, so the
+ * navigation rules can be tested and benchmarked on a plain JVM.
+ * <p/>
+ * It follows the FragmentManager semantics for the added Fragments, the backstack entries and
+ * the reversal of the entries when they are popped, with the difference that transactions and
+ * pops are executed as soon as they are committed, as if executePendingTransactions() was called
+ * right after every call. Only the resumed, paused, view destroyed and destroyed lifecycle
+ * callbacks are dispatched, with a null FragmentManager.
+ * <p/>
+ * It is not part of the library: the unit tests of the navigation module and the benchmarks
+ * compile it from the testFixtures source folder.
+ */
+public class InMemoryNavigationStack implements NavigationStack {
+
+    private static final int OP_ADD = 0;
+    private static final int OP_REPLACE = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int OP_HIDE = 3;
+    private static final int OP_DETACH = 4;
+    private static final int OP_ATTACH = 5;
+
+    /**
+     * Container id of the Fragments added without a container
+     */
+    private static final int NO_CONTAINER = 0;
+
+    private final ArrayList<Added> added = new ArrayList<Added>();
+    private final ArrayList<Entry> backStack = new ArrayList<Entry>();
+    /**
+     * Container of every Fragment once added to one, which the FragmentManager keeps for it
+     */
+    private final WeakHashMap<Fragment, Integer> containers = new WeakHashMap<Fragment, Integer>();
+    /**
+     * Instance state returned for the Fragments, as there is no FragmentManager to save it
+     */
+    private final WeakHashMap<Fragment, Fragment.SavedState> savedStates =
+            new WeakHashMap<Fragment, Fragment.SavedState>();
+    private final ArrayList<FragmentManager.OnBackStackChangedListener> listeners =
+            new ArrayList<FragmentManager.OnBackStackChangedListener>();
+    private final ArrayList<FragmentManager.FragmentLifecycleCallbacks> callbacks =
+            new ArrayList<FragmentManager.FragmentLifecycleCallbacks>();
+
+    private int nextId = 0;
+    private int optimizedCommitCount = 0;
+    private boolean destroyed = false;
+
+    @Override
+    public Transaction beginTransaction() {
+        return new InMemoryTransaction();
+    }
+
+    @Override
+    public boolean executePendingTransactions() {
+        return false;
+    }
+
+    @Override
+    public Fragment findFragmentById(int id) {
+        for (int i = added.size() - 1; i >= 0; i--) {
+            if (added.get(i).containerId == id) {
+                return added.get(i).fragment;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Fragment findFragmentByTag(String tag) {
+        if (tag == null) {
+            return null;
+        }
+        for (int i = added.size() - 1; i >= 0; i--) {
+            if (tag.equals(added.get(i).tag)) {
+                return added.get(i).fragment;
+            }
+        }
+        // Fragments removed by an entry of the backstack are kept until the entry is popped
+        for (int i = backStack.size() - 1; i >= 0; i--) {
+            Fragment fragment = backStack.get(i).findRemoved(tag);
+            if (fragment != null) {
+                return fragment;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getBackStackEntryCount() {
+        return backStack.size();
+    }
+
+    @Override
+    public FragmentManager.BackStackEntry getBackStackEntryAt(int index) {
+        return backStack.get(index);
+    }
+
+    @Override
+    public void popBackStack(String name, int flags) {
+        popBackStackImmediate(name, flags);
+    }
+
+    @Override
+    public boolean popBackStackImmediate() {
+        return popTo(backStack.size() - 1);
+    }
+
+    @Override
+    public boolean popBackStackImmediate(String name, int flags) {
+        boolean inclusive = (flags & FragmentManager.POP_BACK_STACK_INCLUSIVE) != 0;
+        if (name == null) {
+            return popTo(inclusive ? 0 : backStack.size() - 1);
+        }
+        for (int i = backStack.size() - 1; i >= 0; i--) {
+            if (name.equals(backStack.get(i).name)) {
+                return popTo(inclusive ? i : i + 1);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean popBackStackImmediate(int id, int flags) {
+        boolean inclusive = (flags & FragmentManager.POP_BACK_STACK_INCLUSIVE) != 0;
+        for (int i = backStack.size() - 1; i >= 0; i--) {
+            if (backStack.get(i).id == id) {
+                return popTo(inclusive ? i : i + 1);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addOnBackStackChangedListener(FragmentManager.OnBackStackChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeOnBackStackChangedListener(
+            FragmentManager.OnBackStackChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void registerFragmentLifecycleCallbacks(
+            FragmentManager.FragmentLifecycleCallbacks callbacks) {
+        this.callbacks.add(callbacks);
+    }
+
+    @Override
+    public void unregisterFragmentLifecycleCallbacks(
+            FragmentManager.FragmentLifecycleCallbacks callbacks) {
+        this.callbacks.remove(callbacks);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Marks the stack as destroyed, as the FragmentManager of a destroyed Activity.
+     */
+    public void destroy() {
+        destroyed = true;
+    }
+
+    @Override
+    public Fragment.SavedState saveFragmentInstanceState(Fragment fragment) {
+        return savedStates.get(fragment);
+    }
+
+    /**
+     * Sets the instance state {@link #saveFragmentInstanceState(Fragment)} returns for a Fragment.
+     *
+     * @param fragment Fragment of this stack
+     * @param state    Saved state, null for none
+     */
+    public void setSavedState(Fragment fragment, Fragment.SavedState state) {
+        savedStates.put(fragment, state);
+    }
+
+    /**
+     * Fragments currently added, in the order they were added.
+     *
+     * @return Added Fragments
+     */
+    public List<Fragment> getAddedFragments() {
+        ArrayList<Fragment> fragments = new ArrayList<Fragment>(added.size());
+        for (Added entry : added) {
+            fragments.add(entry.fragment);
+        }
+        return Collections.unmodifiableList(fragments);
+    }
+
+    public boolean isHidden(Fragment fragment) {
+        Added entry = find(fragment);
+        return entry != null && entry.hidden;
+    }
+
+    public boolean isDetached(Fragment fragment) {
+        Added entry = find(fragment);
+        return entry != null && entry.detached;
+    }
+
+    /**
+     * Number of committed transactions which allowed the FragmentManager to optimize them.
+     *
+     * @return Optimized commit count
+     */
+    public int getOptimizedCommitCount() {
+        return optimizedCommitCount;
+    }
+
+    private Added find(Fragment fragment) {
+        for (int i = added.size() - 1; i >= 0; i--) {
+            if (added.get(i).fragment == fragment) {
+                return added.get(i);
+            }
+        }
+        return null;
+    }
+
+    private boolean popTo(int lowest) {
+        if (lowest < 0 || lowest >= backStack.size()) {
+            return false;
+        }
+        while (backStack.size() > lowest) {
+            Entry entry = backStack.remove(backStack.size() - 1);
+            for (int i = entry.ops.size() - 1; i >= 0; i--) {
+                revert(entry.ops.get(i));
+            }
+        }
+        notifyBackStackChanged();
+        return true;
+    }
+
+    private void apply(Op op) {
+        switch (op.cmd) {
+            case OP_ADD:
+                add(op.fragment, op.containerId, op.tag);
+                break;
+            case OP_REPLACE:
+                for (int i = added.size() - 1; i >= 0; i--) {
+                    Added entry = added.get(i);
+                    if (entry.containerId == op.containerId && entry.fragment != op.fragment) {
+                        op.replaced.add(0, entry);
+                        remove(entry.fragment);
+                    }
+                }
+                add(op.fragment, op.containerId, op.tag);
+                break;
+            case OP_REMOVE:
+                op.removed = remove(op.fragment);
+                break;
+            case OP_HIDE:
+                setHidden(op.fragment, true);
+                break;
+            case OP_DETACH:
+                setDetached(op.fragment, true);
+                break;
+            case OP_ATTACH:
+                setDetached(op.fragment, false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void revert(Op op) {
+        switch (op.cmd) {
+            case OP_ADD:
+                remove(op.fragment);
+                break;
+            case OP_REPLACE:
+                remove(op.fragment);
+                for (Added entry : op.replaced) {
+                    add(entry.fragment, entry.containerId, entry.tag);
+                }
+                break;
+            case OP_REMOVE:
+                if (op.removed != null) {
+                    add(op.removed.fragment, op.removed.containerId, op.removed.tag);
+                }
+                break;
+            case OP_HIDE:
+                setHidden(op.fragment, false);
+                break;
+            case OP_DETACH:
+                setDetached(op.fragment, false);
+                break;
+            case OP_ATTACH:
+                setDetached(op.fragment, true);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void add(Fragment fragment, int containerId, String tag) {
+        if (find(fragment) != null) {
+            return;
+        }
+        if (containerId != NO_CONTAINER) {
+            containers.put(fragment, containerId);
+        } else if (containers.containsKey(fragment)) {
+            containerId = containers.get(fragment);
+        }
+        added.add(new Added(fragment, containerId, tag));
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onFragmentResumed(null, fragment);
+        }
+    }
+
+    private Added remove(Fragment fragment) {
+        Added entry = find(fragment);
+        if (entry == null) {
+            return null;
+        }
+        added.remove(entry);
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onFragmentPaused(null, fragment);
+            callbacks.get(i).onFragmentViewDestroyed(null, fragment);
+        }
+        if (!isInBackStack(fragment)) {
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).onFragmentDestroyed(null, fragment);
+            }
+        }
+        return entry;
+    }
+
+    private void setHidden(Fragment fragment, boolean hidden) {
+        Added entry = find(fragment);
+        if (entry != null) {
+            entry.hidden = hidden;
+        }
+    }
+
+    private void setDetached(Fragment fragment, boolean detached) {
+        Added entry = find(fragment);
+        if (entry == null || entry.detached == detached) {
+            return;
+        }
+        entry.detached = detached;
+        for (int i = 0; i < callbacks.size(); i++) {
+            if (detached) {
+                callbacks.get(i).onFragmentPaused(null, fragment);
+                callbacks.get(i).onFragmentViewDestroyed(null, fragment);
+            } else {
+                callbacks.get(i).onFragmentResumed(null, fragment);
+            }
+        }
+    }
+
+    private boolean isInBackStack(Fragment fragment) {
+        for (int i = backStack.size() - 1; i >= 0; i--) {
+            for (Op op : backStack.get(i).ops) {
+                if (op.fragment == fragment) {
+                    return true;
+                }
+                for (Added replaced : op.replaced) {
+                    if (replaced.fragment == fragment) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void notifyBackStackChanged() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onBackStackChanged();
+        }
+    }
+
+    /**
+     * Fragment added to the stack
+     */
+    private static class Added {
+
+        final Fragment fragment;
+        final int containerId;
+        final String tag;
+        boolean hidden = false;
+        boolean detached = false;
+
+        Added(Fragment fragment, int containerId, String tag) {
+            this.fragment = fragment;
+            this.containerId = containerId;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Operation of a transaction, with what it needs to be reverted
+     */
+    private static class Op {
+
+        final int cmd;
+        final Fragment fragment;
+        final int containerId;
+        final String tag;
+        final ArrayList<Added> replaced = new ArrayList<Added>();
+        Added removed;
+
+        Op(int cmd, Fragment fragment, int containerId, String tag) {
+            this.cmd = cmd;
+            this.fragment = fragment;
+            this.containerId = containerId;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Backstack entry with the operations to revert when it is popped
+     */
+    private static class Entry implements FragmentManager.BackStackEntry {
+
+        final int id;
+        final String name;
+        final ArrayList<Op> ops;
+
+        Entry(int id, String name, ArrayList<Op> ops) {
+            this.id = id;
+            this.name = name;
+            this.ops = ops;
+        }
+
+        Fragment findRemoved(String tag) {
+            for (int i = ops.size() - 1; i >= 0; i--) {
+                Op op = ops.get(i);
+                for (Added replaced : op.replaced) {
+                    if (tag.equals(replaced.tag)) {
+                        return replaced.fragment;
+                    }
+                }
+                if (op.removed != null && tag.equals(op.removed.tag)) {
+                    return op.removed.fragment;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getBreadCrumbTitleRes() {
+            return 0;
+        }
+
+        @Override
+        public int getBreadCrumbShortTitleRes() {
+            return 0;
+        }
+
+        @Override
+        public CharSequence getBreadCrumbTitle() {
+            return null;
+        }
+
+        @Override
+        public CharSequence getBreadCrumbShortTitle() {
+            return null;
+        }
+    }
+
+    private class InMemoryTransaction implements Transaction {
+
+        private final ArrayList<Op> ops = new ArrayList<Op>();
+        private boolean addToBackStack = false;
+        private String name;
+        private boolean allowOptimization = false;
+        private boolean committed = false;
+
+        @Override
+        public Transaction add(Fragment fragment, String tag) {
+            ops.add(new Op(OP_ADD, fragment, NO_CONTAINER, tag));
+            return this;
+        }
+
+        @Override
+        public Transaction add(int containerId, Fragment fragment, String tag) {
+            ops.add(new Op(OP_ADD, fragment, containerId, tag));
+            return this;
+        }
+
+        @Override
+        public Transaction replace(int containerId, Fragment fragment, String tag) {
+            ops.add(new Op(OP_REPLACE, fragment, containerId, tag));
+            return this;
+        }
+
+        @Override
+        public Transaction remove(Fragment fragment) {
+            ops.add(new Op(OP_REMOVE, fragment, NO_CONTAINER, null));
+            return this;
+        }
+
+        @Override
+        public Transaction hide(Fragment fragment) {
+            ops.add(new Op(OP_HIDE, fragment, NO_CONTAINER, null));
+            return this;
+        }
+
+        @Override
+        public Transaction detach(Fragment fragment) {
+            ops.add(new Op(OP_DETACH, fragment, NO_CONTAINER, null));
+            return this;
+        }
+
+        @Override
+        public Transaction attach(Fragment fragment) {
+            ops.add(new Op(OP_ATTACH, fragment, NO_CONTAINER, null));
+            return this;
+        }
+
+        @Override
+        public Transaction setCustomAnimations(int enter, int exit) {
+            return this;
+        }
+
+        @Override
+        public Transaction setCustomAnimations(int enter, int exit, int popEnter, int popExit) {
+            return this;
+        }
+
+        @Override
+        public Transaction addSharedElement(View sharedElement, String name) {
+            return this;
+        }
+
+        @Override
+        public Transaction addToBackStack(String name) {
+            this.addToBackStack = true;
+            this.name = name;
+            return this;
+        }
+
+        @Override
+        public Transaction setAllowOptimization(boolean allowOptimization) {
+            this.allowOptimization = allowOptimization;
+            return this;
+        }
+
+        @Override
+        public int commit() {
+            return commitAllowingStateLoss();
+        }
+
+        @Override
+        public void commitNow() {
+            commitNowAllowingStateLoss();
+        }
+
+        @Override
+        public void commitNowAllowingStateLoss() {
+            if (addToBackStack) {
+                throw new IllegalStateException(
+                        "This transaction is already being added to the back stack");
+            }
+            commitAllowingStateLoss();
+        }
+
+        @Override
+        public int commitAllowingStateLoss() {
+            if (committed) {
+                throw new IllegalStateException("commit already called");
+            }
+            committed = true;
+            if (allowOptimization) {
+                optimizedCommitCount++;
+            }
+            int id = -1;
+            if (addToBackStack) {
+                id = nextId++;
+                backStack.add(new Entry(id, name, ops));
+            }
+            for (Op op : ops) {
+                apply(op);
+            }
+            if (addToBackStack) {
+                notifyBackStackChanged();
+            }
+            return id;
+        }
+    }
+}